@@ -1,13 +1,26 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class AutomataGUI extends JFrame {
     private JTextArea inputArea, outputArea;
     private JPanel drawingPanel;
     private NFAParser nfaParser;
     private NFAToDFAConverter converter;
+    private DFAMinimizer minimizer;
+    private ConversionCache conversionCache;
     private AutomataVisualizer visualizer;
+    private JCheckBox minimizeBox;
+    private JComboBox<LayoutEngine> layoutBox;
+    private JButton convertButton, cancelButton;
+    private JSpinner maxStatesSpinner, maxMemorySpinner, maxSecondsSpinner;
+    private JLabel statusLabel;
+    private ConversionWorker conversion;
     
     public AutomataGUI() {
         setTitle("NFA to DFA Converter");
@@ -17,6 +30,16 @@ public class AutomataGUI extends JFrame {
         
         nfaParser = new NFAParser();
         converter = new NFAToDFAConverter();
+        // Successive edits of one definition mostly keep the DFA, so reconvert only what changed
+        converter.setIncremental(true);
+        // Totals are visible in JConsole; the last run's breakdown is the status line's tooltip
+        ConversionMetrics metrics = new ConversionMetrics();
+        metrics.register("gui");
+        metrics.addListener(run -> SwingUtilities.invokeLater(() -> statusLabel.setToolTipText(run.toString())));
+        nfaParser.setMetrics(metrics);
+        converter.setMetrics(metrics);
+        minimizer = new DFAMinimizer();
+        conversionCache = new ConversionCache(1_000_000);
         visualizer = new AutomataVisualizer();
         
         initComponents();
@@ -50,25 +73,99 @@ public class AutomataGUI extends JFrame {
         };
         drawingPanel.setBackground(Color.WHITE);
         drawingPanel.setBorder(BorderFactory.createTitledBorder("Visualization"));
+        // Layouts run in the background and repaint the panel as they progress
+        visualizer.setLayoutListener(drawingPanel::repaint);
+        
+        // Wheel zooms around the cursor, dragging pans, double-click resets the view
+        MouseAdapter viewControls = new MouseAdapter() {
+            private Point last;
+            
+            @Override
+            public void mousePressed(MouseEvent e) {
+                last = e.getPoint();
+            }
+            
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                visualizer.pan(e.getX() - last.x, e.getY() - last.y);
+                last = e.getPoint();
+                drawingPanel.repaint();
+            }
+            
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    visualizer.resetView();
+                    drawingPanel.repaint();
+                }
+            }
+            
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                visualizer.zoom(Math.pow(1.1, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+                drawingPanel.repaint();
+            }
+        };
+        drawingPanel.addMouseListener(viewControls);
+        drawingPanel.addMouseMotionListener(viewControls);
+        drawingPanel.addMouseWheelListener(viewControls);
         
         // Button panel
         JPanel buttonPanel = new JPanel();
-        JButton convertButton = new JButton("Convert NFA to DFA");
+        convertButton = new JButton("Convert NFA to DFA");
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
         JButton exampleButton = new JButton("Load Example");
+        minimizeBox = new JCheckBox("Minimize DFA");
+        layoutBox = new JComboBox<>(new LayoutEngine[] {
+            new CircularLayout(), new ForceDirectedLayout(), new LayeredLayout()
+        });
         
         buttonPanel.add(convertButton);
+        buttonPanel.add(cancelButton);
         buttonPanel.add(exampleButton);
+        buttonPanel.add(minimizeBox);
+        buttonPanel.add(new JLabel("Layout:"));
+        buttonPanel.add(layoutBox);
+        
+        // Budgets for the next conversion, and its progress
+        JPanel limitsPanel = new JPanel();
+        maxStatesSpinner = new JSpinner(new SpinnerNumberModel(100_000, 1, Integer.MAX_VALUE, 10_000));
+        maxMemorySpinner = new JSpinner(new SpinnerNumberModel(512, 1, 1 << 20, 64));
+        maxSecondsSpinner = new JSpinner(new SpinnerNumberModel(60, 1, 86_400, 10));
+        statusLabel = new JLabel(" ");
+        limitsPanel.add(new JLabel("Max DFA states:"));
+        limitsPanel.add(maxStatesSpinner);
+        limitsPanel.add(new JLabel("Max memory (MB):"));
+        limitsPanel.add(maxMemorySpinner);
+        limitsPanel.add(new JLabel("Max time (s):"));
+        limitsPanel.add(maxSecondsSpinner);
+        limitsPanel.add(statusLabel);
+        
+        JPanel southPanel = new JPanel(new GridLayout(2, 1));
+        southPanel.add(buttonPanel);
+        southPanel.add(limitsPanel);
         
         // Add components to frame
         add(topPanel, BorderLayout.NORTH);
         add(drawingPanel, BorderLayout.CENTER);
-        add(buttonPanel, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
         
         // Add example NFA
         exampleButton.addActionListener(this::loadExample);
         
         // Add convert action
         convertButton.addActionListener(this::convertNFAToDFA);
+        cancelButton.addActionListener(e -> {
+            if (conversion != null) {
+                conversion.monitor.cancel();
+            }
+        });
+        
+        layoutBox.addActionListener(e -> {
+            visualizer.setLayoutEngine((LayoutEngine) layoutBox.getSelectedItem());
+            drawingPanel.repaint();
+        });
     }
     
     private void loadExample(ActionEvent e) {
@@ -83,17 +180,88 @@ public class AutomataGUI extends JFrame {
     }
     
     private void convertNFAToDFA(ActionEvent e) {
-        try {
-            nfaParser.parse(inputArea.getText());
-            converter.convert(nfaParser);
-            outputArea.setText(converter.generateDFAOutput());
-            visualizer.setDFA(converter.getDFAStates(), converter.getDFATransitions(), 
-                             converter.getDFAStartState(), converter.getDFAFinalStates(), 
-                             nfaParser.getAlphabet());
-            drawingPanel.repaint();
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage(), 
-                "Input Error", JOptionPane.ERROR_MESSAGE);
+        ConversionBudget budget = new ConversionBudget();
+        budget.setMaxStates(((Number) maxStatesSpinner.getValue()).intValue());
+        budget.setMaxBytes(((Number) maxMemorySpinner.getValue()).longValue() << 20);
+        budget.setMaxMillis(((Number) maxSecondsSpinner.getValue()).longValue() * 1000);
+        
+        conversion = new ConversionWorker(inputArea.getText(), minimizeBox.isSelected(), budget);
+        convertButton.setEnabled(false);
+        cancelButton.setEnabled(true);
+        statusLabel.setText("Converting...");
+        conversion.execute();
+    }
+    
+    /**
+     * Parses, converts and formats off the event dispatch thread. The parser,
+     * converter and minimizer belong to the worker until it is done; the
+     * Convert button stays disabled meanwhile.
+     */
+    private final class ConversionWorker extends SwingWorker<String, int[]> {
+        private final String input;
+        private final boolean minimize;
+        private final ConversionMonitor monitor;
+        private final long startTime = System.nanoTime();
+        
+        ConversionWorker(String input, boolean minimize, ConversionBudget budget) {
+            this.input = input;
+            this.minimize = minimize;
+            this.monitor = new ConversionMonitor(budget, (states, queued) -> publish(new int[] {states, queued}));
+        }
+        
+        @Override
+        protected String doInBackground() {
+            nfaParser.parse(input);
+            conversionCache.convert(nfaParser, converter, monitor);
+            if (minimize) {
+                minimizer.minimize(converter, nfaParser.getAlphabet());
+                return minimizer.generateDFAOutput() + "\n\nMinimized " 
+                    + minimizer.getOriginalStateCount() + " -> " + minimizer.getMinimizedStateCount() 
+                    + " states in " + minimizer.getMinimizationNanos() / 1000 + " µs";
+            }
+            return converter.generateDFAOutput();
+        }
+        
+        @Override
+        protected void process(List<int[]> chunks) {
+            int[] latest = chunks.get(chunks.size() - 1);
+            statusLabel.setText("Converting... " + latest[0] + " DFA states, " + latest[1] + " queued");
+        }
+        
+        @Override
+        protected void done() {
+            conversion = null;
+            convertButton.setEnabled(true);
+            cancelButton.setEnabled(false);
+            try {
+                outputArea.setText(get());
+                if (minimize) {
+                    visualizer.setDFA(minimizer.getDFAStates(), minimizer.getDFATransitions(), 
+                                     minimizer.getDFAStartState(), minimizer.getDFAFinalStates(), 
+                                     nfaParser.getAlphabet());
+                } else {
+                    visualizer.setDFA(converter.getDFAStates(), converter.getDFATransitions(), 
+                                     converter.getDFAStartState(), converter.getDFAFinalStates(), 
+                                     nfaParser.getAlphabet());
+                }
+                int reused = converter.getReusedStates();
+                statusLabel.setText("Converted to " + converter.getDFAStates().size() + " DFA states in "
+                    + (System.nanoTime() - startTime) / 1_000_000 + " ms"
+                    + (reused > 0 ? " (" + reused + " reused from the previous run)" : ""));
+                drawingPanel.repaint();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof ConversionAbortedException) {
+                    statusLabel.setText(cause.getMessage());
+                    outputArea.setText(cause.getMessage());
+                } else {
+                    statusLabel.setText(" ");
+                    JOptionPane.showMessageDialog(AutomataGUI.this, "Error: " + cause.getMessage(), 
+                        "Input Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
         }
     }
 }
\ No newline at end of file
@@ -1,190 +1,550 @@
 import java.awt.*;
 import java.awt.geom.*;
+import java.awt.image.BufferedImage;
 import javax.swing.*;
 import java.util.*;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Draws a DFA with its states placed by a {@link LayoutEngine}, circular by
+ * default. The layout runs once per DFA or engine change; with a layout
+ * listener it runs on a background thread and every intermediate result is
+ * drawn as it arrives, otherwise setDFA waits for it.
+ *
+ * Label widths and the rendered picture are cached: screen positions are
+ * refitted only when the layout or the panel size changes, and the picture
+ * is redrawn only when the view (zoom or pan) changes as well. A repaint that
+ * hits the cache is one image copy. DFAs with only a few states and edges are
+ * drawn directly, which is cheaper than the copy.
+ *
+ * Rendering culls states and edges outside the panel and lowers the level of
+ * detail as states get small on screen: below {@link #DETAIL_RADIUS} pixels
+ * labels, arrowheads and self-loops are skipped, and below
+ * {@link #DOT_RADIUS} states become plain dots.
+ */
 public class AutomataVisualizer {
-    private Set<String> dfaStates;
-    private Map<String, Map<String, String>> dfaTransitions;
-    private String startState;
-    private Set<String> finalStates;
-    private Set<String> alphabet;
+    private static final int STATE_RADIUS = 30;
+    private static final int DETAIL_RADIUS = 8;
+    private static final int DOT_RADIUS = 2;
+    private static final int ARROW_SIZE = 10;
+    private static final int IMAGE_CACHE_MIN_ELEMENTS = 256;
+    private static final double MIN_SCALE = 0.05;
+    private static final double MAX_SCALE = 40;
+    
+    // DFA interned once per setDFA: states sorted by name, edges grouped by (from, to)
+    private String[] states;
+    private boolean[] accepting;
+    private int start;
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private String[] edgeLabels;
+    
+    // Layout in engine units, null while a background layout has not reported yet
+    private LayoutEngine layoutEngine = new CircularLayout();
+    private Runnable layoutListener;
+    private LayoutWorker layoutWorker;
+    private double[] layoutX;
+    private double[] layoutY;
+    
+    // Layout fitted to layoutWidth x layoutHeight
+    private int layoutWidth = -1;
+    private int layoutHeight = -1;
+    private double[] x;
+    private double[] y;
+    private double nodeRadius;
+    private Font labelFont;
+    private int[] labelWidths;
+    
+    // Rendered picture and the view it was drawn with
+    private BufferedImage image;
+    private boolean imageValid;
+    private double scale = 1;
+    private double offsetX;
+    private double offsetY;
+    private long lastRepaintNanos;
+    private long lastRenderNanos;
     
     public void setDFA(Set<String> dfaStates, Map<String, Map<String, String>> dfaTransitions,
                       String startState, Set<String> finalStates, Set<String> alphabet) {
-        this.dfaStates = dfaStates;
-        this.dfaTransitions = dfaTransitions;
-        this.startState = startState;
-        this.finalStates = finalStates;
-        this.alphabet = alphabet;
+        states = dfaStates.toArray(new String[0]);
+        Arrays.sort(states);
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < states.length; i++) {
+            ids.put(states[i], i);
+        }
+        accepting = new boolean[states.length];
+        for (String state : finalStates) {
+            Integer id = ids.get(state);
+            if (id != null) accepting[id] = true;
+        }
+        Integer startId = startState == null ? null : ids.get(startState);
+        start = startId == null ? -1 : startId;
+        
+        // Parallel edges share one line, labelled with all of their symbols
+        List<int[]> edges = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (int from = 0; from < states.length; from++) {
+            Map<String, String> row = dfaTransitions.get(states[from]);
+            if (row == null) continue;
+            List<String> symbols = new ArrayList<>(row.keySet());
+            Collections.sort(symbols);
+            Map<Integer, List<String>> byTarget = new LinkedHashMap<>();
+            for (String symbol : symbols) {
+                Integer to = ids.get(row.get(symbol));
+                if (to == null) continue;
+                byTarget.computeIfAbsent(to, k -> new ArrayList<>()).add(symbol);
+            }
+            for (Map.Entry<Integer, List<String>> entry : byTarget.entrySet()) {
+                edges.add(new int[] {from, entry.getKey()});
+                labels.add(label(entry.getValue()));
+            }
+        }
+        edgeFrom = new int[edges.size()];
+        edgeTo = new int[edges.size()];
+        for (int i = 0; i < edgeFrom.length; i++) {
+            edgeFrom[i] = edges.get(i)[0];
+            edgeTo[i] = edges.get(i)[1];
+        }
+        edgeLabels = labels.toArray(new String[0]);
+        
+        labelWidths = null;
+        resetView();
+        startLayout();
+    }
+    
+    /** Sorted symbols joined by commas, with runs of three or more consecutive characters written as a-z. */
+    static String label(List<String> symbols) {
+        StringBuilder label = new StringBuilder();
+        for (int i = 0; i < symbols.size(); ) {
+            int end = i + 1;
+            while (end < symbols.size() && symbols.get(end).length() == 1 && symbols.get(end - 1).length() == 1
+                    && symbols.get(end).charAt(0) == symbols.get(end - 1).charAt(0) + 1) {
+                end++;
+            }
+            if (label.length() > 0) {
+                label.append(',');
+            }
+            if (end - i >= 3) {
+                label.append(symbols.get(i)).append('-').append(symbols.get(end - 1));
+                i = end;
+            } else {
+                label.append(symbols.get(i++));
+            }
+        }
+        return label.toString();
+    }
+    
+    public void setLayoutEngine(LayoutEngine layoutEngine) {
+        this.layoutEngine = layoutEngine;
+        if (states != null) {
+            startLayout();
+        }
+    }
+    
+    public LayoutEngine getLayoutEngine() {
+        return layoutEngine;
+    }
+    
+    /**
+     * With a listener, layouts run on a background thread and the listener is
+     * called on the event dispatch thread whenever new positions are ready.
+     */
+    public void setLayoutListener(Runnable layoutListener) {
+        this.layoutListener = layoutListener;
+    }
+    
+    public boolean isLayoutRunning() {
+        return layoutWorker != null;
+    }
+    
+    private void startLayout() {
+        if (layoutWorker != null) {
+            // Cleared first: cancelling on this thread runs done() right away
+            LayoutWorker previous = layoutWorker;
+            layoutWorker = null;
+            previous.cancel(false);
+        }
+        if (layoutListener == null) {
+            double[] lx = new double[states.length];
+            double[] ly = new double[states.length];
+            layoutEngine.layout(states.length, edgeFrom, edgeTo, start, lx, ly, (px, py) -> true);
+            applyLayout(lx, ly);
+        } else {
+            applyLayout(null, null);
+            layoutWorker = new LayoutWorker(layoutEngine, states.length, edgeFrom, edgeTo, start);
+            layoutWorker.execute();
+        }
+    }
+    
+    private void applyLayout(double[] lx, double[] ly) {
+        layoutX = lx;
+        layoutY = ly;
+        layoutWidth = layoutHeight = -1;
+        imageValid = false;
+    }
+    
+    /** Runs one layout off the event dispatch thread; results from superseded workers are dropped. */
+    private final class LayoutWorker extends SwingWorker<double[][], double[][]> {
+        private final LayoutEngine engine;
+        private final int stateCount;
+        private final int[] from;
+        private final int[] to;
+        private final int startState;
+        
+        LayoutWorker(LayoutEngine engine, int stateCount, int[] from, int[] to, int startState) {
+            this.engine = engine;
+            this.stateCount = stateCount;
+            this.from = from;
+            this.to = to;
+            this.startState = startState;
+        }
+        
+        @Override
+        protected double[][] doInBackground() {
+            double[] lx = new double[stateCount];
+            double[] ly = new double[stateCount];
+            engine.layout(stateCount, from, to, startState, lx, ly, (px, py) -> {
+                if (isCancelled()) return false;
+                publish(new double[][] {px.clone(), py.clone()});
+                return true;
+            });
+            return new double[][] {lx, ly};
+        }
+        
+        @Override
+        protected void process(List<double[][]> chunks) {
+            if (layoutWorker != this) return;
+            double[][] latest = chunks.get(chunks.size() - 1);
+            applyLayout(latest[0], latest[1]);
+            layoutListener.run();
+        }
+        
+        @Override
+        protected void done() {
+            if (layoutWorker != this || isCancelled()) return;
+            layoutWorker = null;
+            double[][] result;
+            try {
+                result = get();
+            } catch (InterruptedException | ExecutionException e) {
+                // A failed engine should not leave the panel empty
+                result = new double[][] {new double[stateCount], new double[stateCount]};
+                new CircularLayout().layout(stateCount, from, to, startState, result[0], result[1], (px, py) -> true);
+            }
+            applyLayout(result[0], result[1]);
+            layoutListener.run();
+        }
     }
     
     public void drawAutomata(Graphics g, int width, int height) {
-        if (dfaStates == null || dfaStates.isEmpty()) {
+        long startTime = System.nanoTime();
+        if (states == null || states.length == 0) {
             g.drawString("Convert an NFA to see visualization", 20, 30);
+            lastRepaintNanos = System.nanoTime() - startTime;
+            return;
+        }
+        if (width <= 0 || height <= 0) return;
+        if (layoutX == null) {
+            g.drawString("Laying out " + states.length + " states...", 20, 30);
+            lastRepaintNanos = System.nanoTime() - startTime;
             return;
         }
         
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        if (width != layoutWidth || height != layoutHeight) {
+            calculateStatePositions(width, height);
+            imageValid = false;
+        }
+        if (labelWidths == null || !g2d.getFont().equals(labelFont)) {
+            measureLabels(g2d);
+            imageValid = false;
+        }
         
-        // Calculate positions for states in a circle
-        Map<String, Point> statePositions = calculateStatePositions(width, height);
+        // Small pictures draw faster than an image copy, so only large ones are cached
+        if (states.length + edgeFrom.length < IMAGE_CACHE_MIN_ELEMENTS) {
+            image = null;
+            long renderStart = System.nanoTime();
+            Graphics2D target = (Graphics2D) g2d.create();
+            try {
+                render(target, width, height);
+            } finally {
+                target.dispose();
+            }
+            lastRenderNanos = System.nanoTime() - renderStart;
+        } else {
+            // Render at device resolution so HiDPI screens do not get a blurry copy
+            double deviceScale = Math.max(1, g2d.getTransform().getScaleX());
+            int imageWidth = (int) Math.ceil(width * deviceScale);
+            int imageHeight = (int) Math.ceil(height * deviceScale);
+            if (image == null || image.getWidth() != imageWidth || image.getHeight() != imageHeight) {
+                image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+                imageValid = false;
+            }
+            if (!imageValid) {
+                long renderStart = System.nanoTime();
+                renderImage(width, height, deviceScale);
+                lastRenderNanos = System.nanoTime() - renderStart;
+                imageValid = true;
+            }
+            g2d.drawImage(image, 0, 0, width, height, null);
+        }
+        lastRepaintNanos = System.nanoTime() - startTime;
+    }
+    
+    // Scales the layout uniformly into the panel, leaving the old 80 pixel margin
+    private void calculateStatePositions(int width, int height) {
+        int numStates = states.length;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < numStates; i++) {
+            minX = Math.min(minX, layoutX[i]);
+            maxX = Math.max(maxX, layoutX[i]);
+            minY = Math.min(minY, layoutY[i]);
+            maxY = Math.max(maxY, layoutY[i]);
+        }
+        double fit = Math.min(fitScale(width, maxX - minX), fitScale(height, maxY - minY));
+        if (fit == Double.MAX_VALUE) {
+            fit = STATE_RADIUS;
+        }
+        double centerX = width / 2.0;
+        double centerY = height / 2.0;
         
-        // Draw transitions
-        drawTransitions(g2d, statePositions);
+        x = new double[numStates];
+        y = new double[numStates];
+        for (int i = 0; i < numStates; i++) {
+            x[i] = centerX + (layoutX[i] - (minX + maxX) / 2) * fit;
+            y[i] = centerY + (layoutY[i] - (minY + maxY) / 2) * fit;
+        }
         
-        // Draw states
-        drawStates(g2d, statePositions, width, height);
+        // Engines put neighbours about a unit apart; shrink states before they would overlap
+        nodeRadius = Math.min(STATE_RADIUS, fit * 0.45);
+        layoutWidth = width;
+        layoutHeight = height;
     }
     
-    private Map<String, Point> calculateStatePositions(int width, int height) {
-        Map<String, Point> statePositions = new HashMap<>();
-        int radius = Math.min(width, height) / 2 - 80;
-        int centerX = width / 2;
-        int centerY = height / 2;
-        
-        List<String> sortedStates = new ArrayList<>(dfaStates);
-        Collections.sort(sortedStates);
-        int numStates = sortedStates.size();
+    private static double fitScale(int size, double span) {
+        return span <= 0 ? Double.MAX_VALUE : Math.max(1, size - 160) / span;
+    }
+    
+    private void measureLabels(Graphics2D g2d) {
+        labelFont = g2d.getFont();
+        FontMetrics fm = g2d.getFontMetrics(labelFont);
+        labelWidths = new int[states.length];
+        for (int i = 0; i < states.length; i++) {
+            labelWidths[i] = fm.stringWidth(states[i]);
+        }
+    }
+    
+    private void renderImage(int width, int height, double deviceScale) {
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.scale(deviceScale, deviceScale);
+            render(g2d, width, height);
+        } finally {
+            g2d.dispose();
+        }
+    }
+    
+    private void render(Graphics2D g2d, int width, int height) {
+        g2d.setFont(labelFont);
+        g2d.setColor(Color.BLACK);
         
-        for (int i = 0; i < numStates; i++) {
-            double angle = 2 * Math.PI * i / numStates - Math.PI/2;
-            int x = centerX + (int)(radius * Math.cos(angle));
-            int y = centerY + (int)(radius * Math.sin(angle));
-            statePositions.put(sortedStates.get(i), new Point(x, y));
+        int n = states.length;
+        double[] sx = new double[n];
+        double[] sy = new double[n];
+        for (int i = 0; i < n; i++) {
+            sx[i] = screenX(x[i]);
+            sy[i] = screenY(y[i]);
         }
+        double r = nodeRadius * scale;
+        // Antialiasing thousands of overlapping lines costs far more than it shows
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, r < DOT_RADIUS
+            ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+        // Anything further than this outside the panel cannot touch it
+        double margin = 3 * r + ARROW_SIZE;
         
-        return statePositions;
+        drawTransitions(g2d, sx, sy, r, width, height, margin);
+        drawStates(g2d, sx, sy, r, width, height, margin);
+    }
+    
+    private double screenX(double worldX) {
+        return worldX * scale + offsetX;
     }
     
-    private void drawTransitions(Graphics2D g2d, Map<String, Point> statePositions) {
-        g2d.setStroke(new BasicStroke(1.5f));
+    private double screenY(double worldY) {
+        return worldY * scale + offsetY;
+    }
+    
+    private void drawTransitions(Graphics2D g2d, double[] sx, double[] sy, double r,
+                                 int width, int height, double margin) {
+        g2d.setStroke(new BasicStroke(r >= DETAIL_RADIUS ? 1.5f : 1f));
+        boolean detail = r >= DETAIL_RADIUS;
         
-        for (String fromState : dfaTransitions.keySet()) {
-            Map<String, String> transitions = dfaTransitions.get(fromState);
-            
-            for (String symbol : transitions.keySet()) {
-                String toState = transitions.get(symbol);
-                Point fromPoint = statePositions.get(fromState);
-                Point toPoint = statePositions.get(toState);
-                
-                if (fromPoint == null || toPoint == null) continue;
-                
-                if (fromState.equals(toState)) {
-                    drawSelfLoop(g2d, fromPoint, symbol);
-                } else {
-                    drawTransitionArrow(g2d, fromPoint, toPoint, symbol);
+        for (int e = 0; e < edgeFrom.length; e++) {
+            int from = edgeFrom[e];
+            int to = edgeTo[e];
+            if (from == to) {
+                if (detail && visible(sx[from], sy[from], margin, width, height)) {
+                    drawSelfLoop(g2d, sx[from], sy[from], r, edgeLabels[e]);
                 }
+                continue;
+            }
+            // Cull by the segment's bounding box
+            if (Math.max(sx[from], sx[to]) < -margin || Math.min(sx[from], sx[to]) > width + margin
+                    || Math.max(sy[from], sy[to]) < -margin || Math.min(sy[from], sy[to]) > height + margin) {
+                continue;
+            }
+            drawArrow(g2d, sx[from], sy[from], sx[to], sy[to], r, detail);
+            if (detail) {
+                drawTransitionLabel(g2d, sx[from], sy[from], sx[to], sy[to], edgeLabels[e]);
             }
         }
     }
     
-    private void drawSelfLoop(Graphics2D g2d, Point point, String symbol) {
-        int loopRadius = 20;
-        g2d.drawOval(point.x - loopRadius, point.y - 30 - loopRadius * 2, 
-            loopRadius * 2, loopRadius * 2);
+    private static boolean visible(double px, double py, double margin, int width, int height) {
+        return px >= -margin && px <= width + margin && py >= -margin && py <= height + margin;
+    }
+    
+    private void drawSelfLoop(Graphics2D g2d, double px, double py, double r, String symbol) {
+        double loopRadius = r * 2 / 3;
+        g2d.draw(new Ellipse2D.Double(px - loopRadius, py - r - loopRadius * 2,
+            loopRadius * 2, loopRadius * 2));
         g2d.setColor(Color.BLUE);
-        g2d.drawString(symbol, point.x, point.y - 30 - loopRadius * 2);
+        g2d.drawString(symbol, (int) px, (int) (py - r - loopRadius * 2));
         g2d.setColor(Color.BLACK);
     }
     
-    private void drawTransitionArrow(Graphics2D g2d, Point fromPoint, Point toPoint, String symbol) {
-        int stateRadius = 30;
-        drawArrow(g2d, fromPoint.x, fromPoint.y, toPoint.x, toPoint.y, stateRadius);
-        
-        int midX = (fromPoint.x + toPoint.x) / 2;
-        int midY = (fromPoint.y + toPoint.y) / 2;
-        double angle = Math.atan2(toPoint.y - fromPoint.y, toPoint.x - fromPoint.x);
+    private void drawTransitionLabel(Graphics2D g2d, double x1, double y1, double x2, double y2, String symbol) {
+        double midX = (x1 + x2) / 2;
+        double midY = (y1 + y2) / 2;
+        double angle = Math.atan2(y2 - y1, x2 - x1);
         int offsetX = (int)(12 * Math.cos(angle + Math.PI/2));
         int offsetY = (int)(12 * Math.sin(angle + Math.PI/2));
         
         g2d.setColor(Color.BLUE);
-        g2d.drawString(symbol, midX + offsetX, midY + offsetY);
+        g2d.drawString(symbol, (int) midX + offsetX, (int) midY + offsetY);
         g2d.setColor(Color.BLACK);
     }
     
-    private void drawStates(Graphics2D g2d, Map<String, Point> statePositions, int width, int height) {
-        int stateRadius = 30;
-        int centerX = width / 2;
-        int centerY = height / 2;
+    private void drawStates(Graphics2D g2d, double[] sx, double[] sy, double r,
+                            int width, int height, double margin) {
+        double centerX = screenX(layoutWidth / 2.0);
+        double centerY = screenY(layoutHeight / 2.0);
         
-        for (String state : dfaStates) {
-            Point pos = statePositions.get(state);
-            if (pos == null) continue;
+        for (int i = 0; i < states.length; i++) {
+            if (!visible(sx[i], sy[i], margin, width, height)) continue;
+            
+            if (r < DOT_RADIUS) {
+                g2d.fill(new Rectangle2D.Double(sx[i] - DOT_RADIUS / 2.0, sy[i] - DOT_RADIUS / 2.0,
+                    DOT_RADIUS, DOT_RADIUS));
+                continue;
+            }
             
             // Draw state circle
+            Ellipse2D circle = new Ellipse2D.Double(sx[i] - r, sy[i] - r, 2 * r, 2 * r);
             g2d.setColor(Color.WHITE);
-            g2d.fillOval(pos.x - stateRadius, pos.y - stateRadius, 2 * stateRadius, 2 * stateRadius);
+            g2d.fill(circle);
             g2d.setColor(Color.BLACK);
-            g2d.drawOval(pos.x - stateRadius, pos.y - stateRadius, 2 * stateRadius, 2 * stateRadius);
+            g2d.draw(circle);
             
             // Double circle for final states
-            if (finalStates.contains(state)) {
-                g2d.drawOval(pos.x - stateRadius + 5, pos.y - stateRadius + 5, 
-                    2 * stateRadius - 10, 2 * stateRadius - 10);
+            if (accepting[i] && r > 6) {
+                double inner = r * 5 / 6;
+                g2d.draw(new Ellipse2D.Double(sx[i] - inner, sy[i] - inner, 2 * inner, 2 * inner));
             }
             
             // Draw state name
-            FontMetrics fm = g2d.getFontMetrics();
-            int textWidth = fm.stringWidth(state);
-            g2d.drawString(state, pos.x - textWidth / 2, pos.y + 5);
+            if (r >= DETAIL_RADIUS) {
+                g2d.drawString(states[i], (int) sx[i] - labelWidths[i] / 2, (int) sy[i] + 5);
+            }
             
             // Draw arrow to start state
-            if (state.equals(startState)) {
-                drawStartArrow(g2d, pos, centerX, centerY, stateRadius);
+            if (i == start) {
+                drawStartArrow(g2d, sx[i], sy[i], centerX, centerY, r);
             }
         }
     }
     
-    private void drawStartArrow(Graphics2D g2d, Point pos, int centerX, int centerY, int stateRadius) {
-        double angle = Math.atan2(pos.y - centerY, pos.x - centerX);
-        int arrowLength = 40;
-        int startX = (int)(pos.x - (stateRadius + arrowLength) * Math.cos(angle));
-        int startY = (int)(pos.y - (stateRadius + arrowLength) * Math.sin(angle));
+    // The start arrow comes in from outside the layout, or from the left for a lone state
+    private void drawStartArrow(Graphics2D g2d, double px, double py, double centerX, double centerY, double r) {
+        double angle = px == centerX && py == centerY ? Math.PI : Math.atan2(py - centerY, px - centerX);
+        double arrowLength = 40 * r / STATE_RADIUS;
+        double startX = px + (r + arrowLength) * Math.cos(angle);
+        double startY = py + (r + arrowLength) * Math.sin(angle);
         
-        drawArrow(g2d, startX, startY, 
-                 (int)(pos.x - stateRadius * Math.cos(angle)), 
-                 (int)(pos.y - stateRadius * Math.sin(angle)), 0);
+        drawArrow(g2d, startX, startY, px + r * Math.cos(angle), py + r * Math.sin(angle), 0, r >= DETAIL_RADIUS);
     }
     
-    private void drawArrow(Graphics2D g2d, int x1, int y1, int x2, int y2, int stateRadius) {
+    private void drawArrow(Graphics2D g2d, double x1, double y1, double x2, double y2,
+                           double stateRadius, boolean arrowhead) {
         double angle = Math.atan2(y2 - y1, x2 - x1);
         
         if (stateRadius > 0) {
-            x1 = (int)(x1 + stateRadius * Math.cos(angle));
-            y1 = (int)(y1 + stateRadius * Math.sin(angle));
-            x2 = (int)(x2 - stateRadius * Math.cos(angle));
-            y2 = (int)(y2 - stateRadius * Math.sin(angle));
+            x1 = x1 + stateRadius * Math.cos(angle);
+            y1 = y1 + stateRadius * Math.sin(angle);
+            x2 = x2 - stateRadius * Math.cos(angle);
+            y2 = y2 - stateRadius * Math.sin(angle);
         }
         
-        g2d.drawLine(x1, y1, x2, y2);
+        g2d.draw(new Line2D.Double(x1, y1, x2, y2));
+        if (!arrowhead) return;
         
         // Draw arrowhead
-        int arrowSize = 10;
-        int dx = x2 - x1;
-        int dy = y2 - y1;
+        double dx = x2 - x1;
+        double dy = y2 - y1;
         double length = Math.sqrt(dx * dx + dy * dy);
+        if (length == 0) return;
         double dirX = dx / length;
         double dirY = dy / length;
         
         double perpX = -dirY;
         double perpY = dirX;
         
-        int[] xPoints = new int[3];
-        int[] yPoints = new int[3];
-        
-        xPoints[0] = x2;
-        yPoints[0] = y2;
-        
-        xPoints[1] = (int)(x2 - arrowSize * dirX + arrowSize * 0.5 * perpX);
-        yPoints[1] = (int)(y2 - arrowSize * dirY + arrowSize * 0.5 * perpY);
-        
-        xPoints[2] = (int)(x2 - arrowSize * dirX - arrowSize * 0.5 * perpX);
-        yPoints[2] = (int)(y2 - arrowSize * dirY - arrowSize * 0.5 * perpY);
-        
-        g2d.fillPolygon(xPoints, yPoints, 3);
+        Path2D head = new Path2D.Double();
+        head.moveTo(x2, y2);
+        head.lineTo(x2 - ARROW_SIZE * dirX + ARROW_SIZE * 0.5 * perpX, y2 - ARROW_SIZE * dirY + ARROW_SIZE * 0.5 * perpY);
+        head.lineTo(x2 - ARROW_SIZE * dirX - ARROW_SIZE * 0.5 * perpX, y2 - ARROW_SIZE * dirY - ARROW_SIZE * 0.5 * perpY);
+        head.closePath();
+        g2d.fill(head);
+    }
+    
+    /** Zooms by {@code factor}, keeping the point under (anchorX, anchorY) in place. */
+    public void zoom(double factor, int anchorX, int anchorY) {
+        double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        offsetX = anchorX - (anchorX - offsetX) * newScale / scale;
+        offsetY = anchorY - (anchorY - offsetY) * newScale / scale;
+        scale = newScale;
+        imageValid = false;
+    }
+    
+    public void pan(double dx, double dy) {
+        offsetX += dx;
+        offsetY += dy;
+        imageValid = false;
+    }
+    
+    /** Sets the zoom level, keeping the centre of the panel in place. */
+    public void setScale(double scale) {
+        zoom(scale / this.scale, Math.max(0, layoutWidth / 2), Math.max(0, layoutHeight / 2));
+    }
+    
+    public double getScale() {
+        return scale;
     }
+    
+    public void resetView() {
+        scale = 1;
+        offsetX = 0;
+        offsetY = 0;
+        imageValid = false;
+    }
+    
+    // Timing of the last drawAutomata call, and of the last full render behind it
+    public long getLastRepaintNanos() { return lastRepaintNanos; }
+    public long getLastRenderNanos() { return lastRenderNanos; }
 }
\ No newline at end of file
@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary format for parsed NFAs and converted DFAs.
+ *
+ * <pre>
+ * magic "NFAB" | version u8 | kind u8 (1 = NFA, 2 = DFA) | payload | CRC32 u32
+ * </pre>
+ *
+ * The payload starts with the interned state and symbol tables (UTF-8,
+ * varint-length prefixed); everything after that is varint-encoded ids.
+ * An NFA stores its declared states, alphabet, final states, start state and
+ * edges as (from delta, symbol, to) triples. A DFA stores its start and final
+ * states and one row of {@code target + 1} per state ({@code 0} = no edge).
+ * Files are read through a memory mapping and decoded in place.
+ */
+public final class AutomatonCodec {
+    private static final int MAGIC = 0x4E464142;
+    private static final int VERSION = 1;
+    private static final int KIND_NFA = 1;
+    private static final int KIND_DFA = 2;
+    
+    private AutomatonCodec() {
+    }
+    
+    public static byte[] encodeNFA(NFAParser parser) {
+        Output out = header(KIND_NFA);
+        SymbolTable states = parser.stateTable();
+        SymbolTable symbols = parser.symbolTable();
+        out.writeStrings(states, states.size());
+        out.writeStrings(symbols, symbols.size());
+        out.writeIds(parser.declaredStates());
+        out.writeIds(parser.declaredSymbols());
+        out.writeIds(parser.finalStateIds());
+        out.writeVarint(parser.startStateId() + 1);
+        
+        int edges = parser.edgeCount();
+        out.writeVarint(edges);
+        int previous = 0;
+        for (int edge = 0; edge < edges; edge++) {
+            int from = parser.edgeFrom(edge);
+            out.writeVarint(zigzag(from - previous));
+            out.writeVarint(parser.edgeSymbol(edge));
+            out.writeVarint(parser.edgeTo(edge));
+            previous = from;
+        }
+        return out.finish();
+    }
+    
+    public static NFAParser decodeNFA(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = open(buffer, KIND_NFA);
+        NFAParser parser = new NFAParser();
+        parser.clear();
+        int stateCount = readCount(in);
+        for (int i = 0; i < stateCount; i++) {
+            parser.addState(readString(in));
+        }
+        int symbolCount = readCount(in);
+        for (int i = 0; i < symbolCount; i++) {
+            parser.addSymbol(readString(in));
+        }
+        for (int id : readIds(in, stateCount)) parser.declareState(id);
+        for (int id : readIds(in, symbolCount)) parser.declareSymbol(id);
+        for (int id : readIds(in, stateCount)) parser.markFinal(id);
+        parser.setStartStateId(readId(in, stateCount + 1) - 1);
+        
+        int edges = readCount(in);
+        int from = 0;
+        for (int edge = 0; edge < edges; edge++) {
+            from += unzigzag(readVarint(in));
+            if (from < 0 || from >= stateCount) {
+                throw new IOException("Corrupt automaton data: state id " + from);
+            }
+            parser.addEdge(from, readId(in, symbolCount), readId(in, stateCount));
+        }
+        return parser;
+    }
+    
+    public static byte[] encodeDFA(NFAToDFAConverter converter) {
+        Output out = header(KIND_DFA);
+        String[] states = converter.getDFAStates().toArray(new String[0]);
+        String[] symbols = converter.getAlphabet().toArray(new String[0]);
+        Arrays.sort(states);
+        Arrays.sort(symbols);
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < states.length; i++) {
+            ids.put(states[i], i);
+        }
+        
+        out.writeVarint(states.length);
+        for (String state : states) out.writeString(state);
+        out.writeVarint(symbols.length);
+        for (String symbol : symbols) out.writeString(symbol);
+        out.writeVarint(converter.getDFAStartState() == null ? 0 : ids.get(converter.getDFAStartState()) + 1);
+        
+        BitSet finals = new BitSet(states.length);
+        for (String state : converter.getDFAFinalStates()) {
+            finals.set(ids.get(state));
+        }
+        out.writeIds(finals);
+        
+        for (String state : states) {
+            Map<String, String> row = converter.getDFATransitions().getOrDefault(state, Collections.emptyMap());
+            for (String symbol : symbols) {
+                String target = row.get(symbol);
+                out.writeVarint(target == null ? 0 : ids.get(target) + 1);
+            }
+        }
+        return out.finish();
+    }
+    
+    public static NFAToDFAConverter decodeDFA(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = open(buffer, KIND_DFA);
+        String[] states = new String[readCount(in)];
+        for (int i = 0; i < states.length; i++) states[i] = readString(in);
+        String[] symbols = new String[readCount(in)];
+        for (int i = 0; i < symbols.length; i++) symbols[i] = readString(in);
+        int start = readId(in, states.length + 1) - 1;
+        
+        Set<String> finals = new HashSet<>();
+        for (int id : readIds(in, states.length)) finals.add(states[id]);
+        
+        Map<String, Map<String, String>> transitions = new HashMap<>();
+        for (String state : states) {
+            Map<String, String> row = new HashMap<>();
+            for (String symbol : symbols) {
+                int target = readId(in, states.length + 1);
+                if (target > 0) row.put(symbol, states[target - 1]);
+            }
+            if (!row.isEmpty()) transitions.put(state, row);
+        }
+        
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.restore(new HashSet<>(Arrays.asList(states)), transitions,
+            start < 0 ? null : states[start], finals, new HashSet<>(Arrays.asList(symbols)));
+        return converter;
+    }
+    
+    public static void writeNFA(NFAParser parser, Path file) throws IOException {
+        write(encodeNFA(parser), file);
+    }
+    
+    public static NFAParser readNFA(Path file) throws IOException {
+        return decodeNFA(map(file));
+    }
+    
+    public static void writeDFA(NFAToDFAConverter converter, Path file) throws IOException {
+        write(encodeDFA(converter), file);
+    }
+    
+    public static NFAToDFAConverter readDFA(Path file) throws IOException {
+        return decodeDFA(map(file));
+    }
+    
+    private static void write(byte[] data, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+    
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Automaton file too large: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    private static Output header(int kind) {
+        Output out = new Output();
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(kind);
+        return out;
+    }
+    
+    /** Checks magic, version, kind and checksum and returns a view positioned at the payload. */
+    private static ByteBuffer open(ByteBuffer buffer, int kind) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        if (in.remaining() < 10 || in.getInt() != MAGIC) {
+            throw new IOException("Not an automaton file");
+        }
+        int version = in.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported automaton format version " + version);
+        }
+        int actualKind = in.get() & 0xFF;
+        if (actualKind != kind) {
+            throw new IOException("Expected " + (kind == KIND_NFA ? "an NFA" : "a DFA") + " file");
+        }
+        
+        int checksumAt = in.limit() - 4;
+        CRC32 crc = new CRC32();
+        ByteBuffer covered = buffer.duplicate();
+        covered.limit(checksumAt);
+        crc.update(covered);
+        if ((int) crc.getValue() != in.getInt(checksumAt)) {
+            throw new IOException("Automaton file checksum mismatch");
+        }
+        in.limit(checksumAt);
+        return in;
+    }
+    
+    private static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new IOException("Corrupt automaton data: truncated");
+            }
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Corrupt automaton data: varint too long");
+    }
+    
+    private static int readCount(ByteBuffer in) throws IOException {
+        int count = readVarint(in);
+        // Every entry takes at least one byte, which bounds allocations on corrupt input
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("Corrupt automaton data: count " + count);
+        }
+        return count;
+    }
+    
+    private static int readId(ByteBuffer in, int bound) throws IOException {
+        int id = readVarint(in);
+        if (id < 0 || id >= bound) {
+            throw new IOException("Corrupt automaton data: id " + id);
+        }
+        return id;
+    }
+    
+    private static int[] readIds(ByteBuffer in, int bound) throws IOException {
+        int[] ids = new int[readCount(in)];
+        int previous = -1;
+        for (int i = 0; i < ids.length; i++) {
+            previous += readVarint(in) + 1;
+            if (previous < 0 || previous >= bound) {
+                throw new IOException("Corrupt automaton data: id " + previous);
+            }
+            ids[i] = previous;
+        }
+        return ids;
+    }
+    
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = readCount(in);
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+    
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+    
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static final class Output {
+        private byte[] bytes = new byte[256];
+        private int size;
+        
+        void writeByte(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+        
+        void writeInt(int value) {
+            writeByte(value >>> 24);
+            writeByte(value >>> 16);
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+        
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+        
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            for (byte b : utf8) writeByte(b);
+        }
+        
+        void writeStrings(SymbolTable table, int count) {
+            writeVarint(count);
+            for (int id = 0; id < count; id++) writeString(table.name(id));
+        }
+        
+        // Ascending ids as gaps, so dense sets take about a byte per id
+        void writeIds(BitSet ids) {
+            writeVarint(ids.cardinality());
+            int previous = -1;
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                writeVarint(id - previous - 1);
+                previous = id;
+            }
+        }
+        
+        byte[] finish() {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, size);
+            writeInt((int) crc.getValue());
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
\ No newline at end of file
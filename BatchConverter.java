@@ -0,0 +1,423 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts many NFA definitions without a display, either every regular file
+ * under a directory or a stream of definitions separated by {@code ---}
+ * lines. Definitions are converted on a fixed pool of worker threads; the
+ * parser and converter are stateful, so every worker owns its own. At most a
+ * few definitions per worker are queued at a time, so a long stream is never
+ * read ahead into memory.
+ *
+ * Results are written in completion order, one per definition, as text
+ * blocks or as one JSON object per line, followed by a summary with the
+ * throughput of the whole run. With {@code --metrics}, the time spent in
+ * each phase and the subset counters of all workers are printed to standard
+ * error at the end, and can be watched over JMX while the run goes on.
+ *
+ * <pre>
+ * java NFAtoDFA --batch &lt;dir|-&gt; [--threads N] [--format text|json] [--out FILE]
+ *               [--minimize] [--max-states N] [--max-seconds N] [--metrics]
+ * </pre>
+ */
+public class BatchConverter {
+    public enum Format { TEXT, JSON }
+    
+    private static final String SEPARATOR = "---";
+    private static final int QUEUED_PER_THREAD = 4;
+    
+    public static class Summary {
+        private final int definitions;
+        private final int failed;
+        private final int aborted;
+        private final long dfaStates;
+        private final long nanos;
+        
+        Summary(int definitions, int failed, int aborted, long dfaStates, long nanos) {
+            this.definitions = definitions;
+            this.failed = failed;
+            this.aborted = aborted;
+            this.dfaStates = dfaStates;
+            this.nanos = nanos;
+        }
+        
+        public int getDefinitions() { return definitions; }
+        public int getConverted() { return definitions - failed - aborted; }
+        // Definitions that could not be read, parsed or converted
+        public int getFailed() { return failed; }
+        // Conversions stopped by the budget
+        public int getAborted() { return aborted; }
+        public long getDFAStates() { return dfaStates; }
+        public long getNanos() { return nanos; }
+        public double getDefinitionsPerSecond() { return nanos == 0 ? 0 : definitions * 1e9 / nanos; }
+    }
+    
+    // One definition: a file read by the worker, or text already split off a stream
+    private static final class Job {
+        final String name;
+        final Path path;
+        final String text;
+        
+        Job(String name, Path path, String text) {
+            this.name = name;
+            this.path = path;
+            this.text = text;
+        }
+    }
+    
+    private interface JobSource {
+        /** The next definition, or null at the end. */
+        Job next() throws IOException;
+    }
+    
+    private final class Worker {
+        private final NFAParser parser = new NFAParser();
+        private final NFAToDFAConverter converter = new NFAToDFAConverter();
+        private final DFAMinimizer minimizer = new DFAMinimizer();
+        
+        Worker() {
+            parser.setMetrics(metrics);
+            converter.setMetrics(metrics);
+        }
+        
+        void convert(Job job) {
+            long startTime = System.nanoTime();
+            long parseNanos = 0;
+            try {
+                if (job.path != null) {
+                    parser.parse(job.path);
+                } else {
+                    parser.parse(job.text);
+                }
+                parseNanos = System.nanoTime() - startTime;
+                converter.convert(parser, new ConversionMonitor(budget, null));
+                if (minimize) {
+                    minimizer.minimize(converter, parser.getAlphabet());
+                    record(job.name, parseNanos, System.nanoTime() - startTime - parseNanos,
+                        minimizer.getDFAStates(), minimizer.getDFATransitions(), minimizer.getDFAStartState(),
+                        minimizer.getDFAFinalStates(), parser.getAlphabet());
+                } else {
+                    record(job.name, parseNanos, System.nanoTime() - startTime - parseNanos,
+                        converter.getDFAStates(), converter.getDFATransitions(), converter.getDFAStartState(),
+                        converter.getDFAFinalStates(), converter.getAlphabet());
+                }
+            } catch (ConversionAbortedException e) {
+                recordFailure(job.name, "aborted", e.getMessage(), parseNanos, System.nanoTime() - startTime);
+            } catch (IOException | RuntimeException e) {
+                recordFailure(job.name, "error", String.valueOf(e.getMessage()), parseNanos,
+                    System.nanoTime() - startTime);
+            } catch (Throwable e) {
+                // OutOfMemoryError or StackOverflowError on a huge definition fails that definition, not the run
+                recordFailure(job.name, "error", e.toString(), parseNanos, System.nanoTime() - startTime);
+            }
+        }
+    }
+    
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Format format = Format.TEXT;
+    private ConversionBudget budget = new ConversionBudget();
+    private boolean minimize;
+    private ConversionMetrics metrics;
+    
+    // Totals and output of the current run; guarded by this
+    private Writer out;
+    private IOException writeError;
+    private int definitions;
+    private int failed;
+    private int aborted;
+    private long dfaStates;
+    
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    
+    public void setFormat(Format format) { this.format = format; }
+    public void setBudget(ConversionBudget budget) { this.budget = budget; }
+    public void setMinimize(boolean minimize) { this.minimize = minimize; }
+    // Shared by all workers; null, the default, measures nothing
+    public void setMetrics(ConversionMetrics metrics) { this.metrics = metrics; }
+    
+    /** Converts every regular file under {@code directory}, in path order. */
+    public Summary convertDirectory(Path directory, Writer out) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        Iterator<Path> remaining = files.iterator();
+        return run(() -> {
+            if (!remaining.hasNext()) return null;
+            Path file = remaining.next();
+            return new Job(directory.relativize(file).toString(), file, null);
+        }, out);
+    }
+    
+    /** Converts the definitions in {@code in}, which are separated by lines reading {@code ---}. */
+    public Summary convertStream(Reader in, String name, Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        int[] count = new int[1];
+        return run(() -> {
+            StringBuilder definition = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().equals(SEPARATOR)) {
+                    if (definition.length() > 0) break;
+                    continue;
+                }
+                if (!line.trim().isEmpty()) {
+                    definition.append(line).append('\n');
+                }
+            }
+            if (definition.length() == 0) return null;
+            return new Job(name + "#" + ++count[0], null, definition.toString());
+        }, out);
+    }
+    
+    private Summary run(JobSource source, Writer out) throws IOException {
+        synchronized (this) {
+            this.out = out;
+            writeError = null;
+            definitions = failed = aborted = 0;
+            dfaStates = 0;
+        }
+        long startTime = System.nanoTime();
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        Semaphore queued = new Semaphore(parallelism * QUEUED_PER_THREAD);
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            Job job;
+            while ((job = source.next()) != null) {
+                Job next = job;
+                queued.acquire();
+                pool.execute(() -> {
+                    try {
+                        workers.get().convert(next);
+                    } finally {
+                        queued.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch conversion interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        
+        synchronized (this) {
+            Summary summary = new Summary(definitions, failed, aborted, dfaStates, System.nanoTime() - startTime);
+            write(formatSummary(summary));
+            out.flush();
+            if (writeError != null) {
+                throw writeError;
+            }
+            return summary;
+        }
+    }
+    
+    private void record(String name, long parseNanos, long convertNanos, Set<String> states,
+                        Map<String, Map<String, String>> transitions, String startState,
+                        Set<String> finalStates, Set<String> alphabet) {
+        // Formatted on the worker, so only the write itself is serialized
+        String text;
+        if (format == Format.JSON) {
+            StringBuilder json = new StringBuilder("{\"file\":");
+            appendJson(json, name).append(",\"status\":\"ok\"");
+            json.append(",\"parseMillis\":").append(millis(parseNanos));
+            json.append(",\"convertMillis\":").append(millis(convertNanos));
+            json.append(",\"dfaStates\":").append(states.size());
+            json.append(",\"dfa\":{\"states\":");
+            appendJson(json, sorted(states)).append(",\"alphabet\":");
+            appendJson(json, sorted(alphabet)).append(",\"start\":");
+            appendJson(json, startState).append(",\"final\":");
+            appendJson(json, sorted(finalStates)).append(",\"transitions\":{");
+            boolean firstState = true;
+            for (String state : sorted(states)) {
+                json.append(firstState ? "" : ",");
+                appendJson(json, state).append(":{");
+                firstState = false;
+                Map<String, String> row = transitions.getOrDefault(state, Collections.emptyMap());
+                boolean firstSymbol = true;
+                for (String symbol : sorted(alphabet)) {
+                    json.append(firstSymbol ? "" : ",");
+                    appendJson(json, symbol).append(':');
+                    appendJson(json, row.getOrDefault(symbol, NFAToDFAConverter.DEAD_STATE));
+                    firstSymbol = false;
+                }
+                json.append('}');
+            }
+            text = json.append("}}}\n").toString();
+        } else {
+            text = "== " + name + ": " + states.size() + " DFA states, parse " + millis(parseNanos)
+                + " ms, convert " + millis(convertNanos) + " ms\n"
+                + NFAToDFAConverter.formatDFA(states, transitions, startState, finalStates, alphabet) + "\n\n";
+        }
+        synchronized (this) {
+            definitions++;
+            dfaStates += states.size();
+            write(text);
+        }
+    }
+    
+    private void recordFailure(String name, String status, String message, long parseNanos, long totalNanos) {
+        String text;
+        if (format == Format.JSON) {
+            StringBuilder json = new StringBuilder("{\"file\":");
+            appendJson(json, name).append(",\"status\":\"").append(status).append("\",\"message\":");
+            appendJson(json, message);
+            json.append(",\"parseMillis\":").append(millis(parseNanos));
+            json.append(",\"totalMillis\":").append(millis(totalNanos));
+            text = json.append("}\n").toString();
+        } else {
+            text = "== " + name + ": " + status + " after " + millis(totalNanos) + " ms: " + message + "\n\n";
+        }
+        synchronized (this) {
+            definitions++;
+            if (status.equals("aborted")) {
+                aborted++;
+            } else {
+                failed++;
+            }
+            write(text);
+        }
+    }
+    
+    private String formatSummary(Summary summary) {
+        if (format == Format.JSON) {
+            return "{\"summary\":{\"definitions\":" + summary.getDefinitions()
+                + ",\"converted\":" + summary.getConverted()
+                + ",\"failed\":" + summary.getFailed()
+                + ",\"aborted\":" + summary.getAborted()
+                + ",\"dfaStates\":" + summary.getDFAStates()
+                + ",\"threads\":" + parallelism
+                + ",\"millis\":" + millis(summary.getNanos())
+                + ",\"definitionsPerSecond\":" + String.format(Locale.ROOT, "%.1f", summary.getDefinitionsPerSecond())
+                + "}}\n";
+        }
+        return String.format(Locale.ROOT, "Converted %d of %d definitions (%d failed, %d aborted) in %s ms on %d threads:"
+            + " %.1f definitions/s, %d DFA states%n", summary.getConverted(), summary.getDefinitions(),
+            summary.getFailed(), summary.getAborted(), millis(summary.getNanos()), parallelism,
+            summary.getDefinitionsPerSecond(), summary.getDFAStates());
+    }
+    
+    // Callers hold the lock; the first failure is kept and rethrown at the end of the run
+    private void write(String text) {
+        if (writeError != null) return;
+        try {
+            out.write(text);
+        } catch (IOException e) {
+            writeError = e;
+        }
+    }
+    
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+    
+    private static List<String> sorted(Collection<String> values) {
+        List<String> list = new ArrayList<>(values);
+        Collections.sort(list);
+        return list;
+    }
+    
+    private static StringBuilder appendJson(StringBuilder json, List<String> values) {
+        json.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) json.append(',');
+            appendJson(json, values.get(i));
+        }
+        return json.append(']');
+    }
+    
+    private static StringBuilder appendJson(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"');
+    }
+    
+    /** Runs the command line of {@link NFAtoDFA} in batch mode and returns the process exit code. */
+    public static int run(String[] args) {
+        BatchConverter batch = new BatchConverter();
+        ConversionBudget budget = new ConversionBudget();
+        String input = null;
+        String output = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--batch": input = args[++i]; break;
+                    case "--threads": batch.setParallelism(Integer.parseInt(args[++i])); break;
+                    case "--format": batch.setFormat(Format.valueOf(args[++i].toUpperCase(Locale.ROOT))); break;
+                    case "--out": output = args[++i]; break;
+                    case "--minimize": batch.setMinimize(true); break;
+                    case "--metrics":
+                        ConversionMetrics metrics = new ConversionMetrics();
+                        metrics.register("batch");
+                        batch.setMetrics(metrics);
+                        break;
+                    case "--max-states": budget.setMaxStates(Integer.parseInt(args[++i])); break;
+                    case "--max-seconds": budget.setMaxMillis(Long.parseLong(args[++i]) * 1000); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("--batch <dir|-> is required");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Missing value for " + args[args.length - 1]);
+            return 2;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java NFAtoDFA --batch <dir|-> [--threads N] [--format text|json] [--out FILE]"
+                + " [--minimize] [--max-states N] [--max-seconds N] [--metrics]");
+            return 2;
+        }
+        batch.setBudget(budget);
+        
+        try (Writer out = new BufferedWriter(output == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+            Summary summary = input.equals("-")
+                ? batch.convertStream(new InputStreamReader(System.in, StandardCharsets.UTF_8), "stdin", out)
+                : batch.convertDirectory(Paths.get(input), out);
+            if (output != null) {
+                System.err.print(batch.formatSummary(summary));
+            }
+            if (batch.metrics != null) {
+                System.err.print(batch.metrics.report());
+            }
+            return summary.getConverted() == summary.getDefinitions() ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Batch conversion failed: " + e.getMessage());
+            return 1;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,21 @@
+/**
+ * States on one circle in index order, starting at the top. The radius is
+ * chosen so that neighbours are one unit apart.
+ */
+public class CircularLayout implements LayoutEngine {
+    @Override
+    public void layout(int stateCount, int[] edgeFrom, int[] edgeTo, int startState,
+                       double[] x, double[] y, Progress progress) {
+        double radius = stateCount < 2 ? 0 : 0.5 / Math.sin(Math.PI / stateCount);
+        for (int i = 0; i < stateCount; i++) {
+            double angle = 2 * Math.PI * i / stateCount - Math.PI/2;
+            x[i] = radius * Math.cos(angle);
+            y[i] = radius * Math.sin(angle);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "Circular";
+    }
+}
\ No newline at end of file
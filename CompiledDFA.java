@@ -0,0 +1,161 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Table-driven matcher compiled from a converted DFA. Every symbol must be a
+ * single character in the range 0-255. Bytes are mapped to symbol classes
+ * (class 0 means "not in the alphabet" and leads to a dead state), and the
+ * transitions live in one flat {@code int[]} holding pre-multiplied row
+ * offsets, so the hot loop is a table lookup and an add per byte with no
+ * allocation. Instances are immutable and can be shared across threads.
+ */
+public final class CompiledDFA {
+    private final int[] byteClass = new int[256];
+    private final int stride;
+    private final int[] table;
+    private final long[] accepting;
+    private final int start;
+    private final int dead;
+    
+    private CompiledDFA(Set<String> dfaStates, Map<String, Map<String, String>> dfaTransitions,
+                        String dfaStartState, Set<String> dfaFinalStates, Set<String> alphabet) {
+        String[] symbols = alphabet.toArray(new String[0]);
+        Arrays.sort(symbols);
+        for (int i = 0; i < symbols.length; i++) {
+            String symbol = symbols[i];
+            if (symbol.length() != 1 || symbol.charAt(0) > 0xFF) {
+                throw new IllegalArgumentException("Compiled matcher needs single-byte symbols, got: " + symbol);
+            }
+            byteClass[symbol.charAt(0)] = i + 1;
+        }
+        this.stride = symbols.length + 1;
+        
+        // The converter's dead state shares the extra sink row used for bytes outside the alphabet
+        List<String> live = new ArrayList<>(dfaStates);
+        live.remove(NFAToDFAConverter.DEAD_STATE);
+        String[] names = live.toArray(new String[0]);
+        Arrays.sort(names);
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+        int deadId = names.length;
+        ids.put(NFAToDFAConverter.DEAD_STATE, deadId);
+        this.table = new int[(names.length + 1) * stride];
+        this.accepting = new long[IndexedNFA.wordsFor(names.length + 1)];
+        Arrays.fill(table, deadId * stride);
+        
+        for (int state = 0; state < names.length; state++) {
+            Map<String, String> row = dfaTransitions.getOrDefault(names[state], Collections.emptyMap());
+            for (int i = 0; i < symbols.length; i++) {
+                String target = row.get(symbols[i]);
+                if (target != null) {
+                    table[state * stride + i + 1] = ids.get(target) * stride;
+                }
+            }
+            if (dfaFinalStates.contains(names[state])) {
+                accepting[state >>> 6] |= 1L << state;
+            }
+        }
+        this.start = ids.get(dfaStartState) * stride;
+        this.dead = deadId * stride;
+    }
+    
+    public static CompiledDFA compile(NFAToDFAConverter converter, Set<String> alphabet) {
+        return new CompiledDFA(converter.getDFAStates(), converter.getDFATransitions(),
+            converter.getDFAStartState(), converter.getDFAFinalStates(), alphabet);
+    }
+    
+    public static CompiledDFA compile(DFAMinimizer minimizer, Set<String> alphabet) {
+        return new CompiledDFA(minimizer.getDFAStates(), minimizer.getDFATransitions(),
+            minimizer.getDFAStartState(), minimizer.getDFAFinalStates(), alphabet);
+    }
+    
+    public boolean matches(CharSequence input) {
+        int state = start;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            char c = input.charAt(i);
+            if (c > 0xFF) return false;
+            state = table[state + byteClass[c]];
+            if (state == dead) return false;
+        }
+        return isAccepting(state);
+    }
+    
+    public boolean matches(byte[] input) {
+        return matches(input, 0, input.length);
+    }
+    
+    public boolean matches(byte[] input, int offset, int length) {
+        int state = start;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            state = table[state + byteClass[input[i] & 0xFF]];
+            if (state == dead) return false;
+        }
+        return isAccepting(state);
+    }
+    
+    /** Matches the bytes between position and limit without moving the buffer's position. */
+    public boolean matches(ByteBuffer input) {
+        int state = start;
+        for (int i = input.position(), end = input.limit(); i < end; i++) {
+            state = table[state + byteClass[input.get(i) & 0xFF]];
+            if (state == dead) return false;
+        }
+        return isAccepting(state);
+    }
+    
+    public int matchAll(CharSequence[] inputs, boolean[] results) {
+        int count = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            boolean match = matches(inputs[i]);
+            results[i] = match;
+            if (match) count++;
+        }
+        return count;
+    }
+    
+    public int matchAll(byte[][] inputs, boolean[] results) {
+        int count = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            boolean match = matches(inputs[i], 0, inputs[i].length);
+            results[i] = match;
+            if (match) count++;
+        }
+        return count;
+    }
+    
+    public int countMatches(Collection<? extends CharSequence> inputs) {
+        int count = 0;
+        for (CharSequence input : inputs) {
+            if (matches(input)) count++;
+        }
+        return count;
+    }
+    
+    // Raw stepping for scanners that drive the table themselves; states are row offsets
+    int startState() {
+        return start;
+    }
+    
+    int deadState() {
+        return dead;
+    }
+    
+    int step(int state, int b) {
+        return table[state + byteClass[b & 0xFF]];
+    }
+    
+    boolean isAccepting(int state) {
+        int id = state / stride;
+        return (accepting[id >>> 6] & (1L << id)) != 0;
+    }
+    
+    public int getStateCount() {
+        return table.length / stride;
+    }
+    
+    public int getClassCount() {
+        return stride;
+    }
+}
\ No newline at end of file
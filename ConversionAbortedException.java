@@ -0,0 +1,42 @@
+/**
+ * Thrown when a conversion is cancelled or runs over its
+ * {@link ConversionBudget}. Carries the statistics of the partial run; the
+ * converter itself is left empty.
+ */
+public class ConversionAbortedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    public enum Reason { CANCELLED, STATE_LIMIT, MEMORY_LIMIT, TIME_LIMIT }
+    
+    private final Reason reason;
+    private final int statesDiscovered;
+    private final int queueDepth;
+    private final long estimatedBytes;
+    private final long elapsedNanos;
+    
+    public ConversionAbortedException(Reason reason, int statesDiscovered, int queueDepth,
+                                      long estimatedBytes, long elapsedNanos) {
+        super(describe(reason) + " after " + statesDiscovered + " DFA states (" + queueDepth
+            + " still queued, ~" + (estimatedBytes >> 10) + " KB, " + elapsedNanos / 1_000_000 + " ms)");
+        this.reason = reason;
+        this.statesDiscovered = statesDiscovered;
+        this.queueDepth = queueDepth;
+        this.estimatedBytes = estimatedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    private static String describe(Reason reason) {
+        switch (reason) {
+            case CANCELLED: return "Conversion cancelled";
+            case STATE_LIMIT: return "State budget exceeded";
+            case MEMORY_LIMIT: return "Memory budget exceeded";
+            default: return "Time budget exceeded";
+        }
+    }
+    
+    public Reason getReason() { return reason; }
+    public int getStatesDiscovered() { return statesDiscovered; }
+    public int getQueueDepth() { return queueDepth; }
+    public long getEstimatedBytes() { return estimatedBytes; }
+    public long getElapsedNanos() { return elapsedNanos; }
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+/**
+ * Limits for one subset construction. A conversion that exceeds any of them
+ * stops with a {@link ConversionAbortedException}. Memory is the estimated
+ * size of the construction's own tables (subset bitsets, memoized closures
+ * and the transition table), not the whole heap. Everything is unlimited by
+ * default.
+ */
+public class ConversionBudget {
+    private int maxStates = Integer.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private long maxNanos = Long.MAX_VALUE;
+    
+    public void setMaxStates(int maxStates) {
+        if (maxStates < 1) {
+            throw new IllegalArgumentException("State budget must be at least 1: " + maxStates);
+        }
+        this.maxStates = maxStates;
+    }
+    
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Memory budget must be at least 1 byte: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+    
+    public void setMaxMillis(long maxMillis) {
+        if (maxMillis < 1) {
+            throw new IllegalArgumentException("Time budget must be at least 1 ms: " + maxMillis);
+        }
+        this.maxNanos = maxMillis > Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : maxMillis * 1_000_000;
+    }
+    
+    public int getMaxStates() { return maxStates; }
+    public long getMaxBytes() { return maxBytes; }
+    public long getMaxNanos() { return maxNanos; }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content-addressed cache of converted DFAs. The key is a SHA-256 over the
+ * canonical int-indexed form of the NFA (sorted states and alphabet, sorted
+ * and de-duplicated transitions, start and final states), so reordering
+ * lines or changing whitespace in the definition does not change it.
+ *
+ * Entries are kept in the {@link AutomatonCodec} DFA format. The in-memory
+ * tier is an LRU bounded by the total number of DFA transitions it holds; an
+ * optional directory acts as a second tier that survives restarts.
+ */
+public class ConversionCache {
+    private static final class Entry {
+        final byte[] dfa;
+        final long transitions;
+        final long conversionNanos;
+        
+        Entry(byte[] dfa, long transitions, long conversionNanos) {
+            this.dfa = dfa;
+            this.transitions = transitions;
+            this.conversionNanos = conversionNanos;
+        }
+    }
+    
+    private final long maxTransitions;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedTransitions;
+    private Path diskDirectory;
+    
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+    private long diskErrors;
+    private long savedNanos;
+    
+    public ConversionCache(long maxTransitions) {
+        if (maxTransitions < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one transition: " + maxTransitions);
+        }
+        this.maxTransitions = maxTransitions;
+    }
+    
+    public synchronized void setDiskDirectory(Path diskDirectory) throws IOException {
+        if (diskDirectory != null) {
+            Files.createDirectories(diskDirectory);
+        }
+        this.diskDirectory = diskDirectory;
+    }
+    
+    /** Fills {@code target} with the DFA for {@code nfaParser}, converting only on a cache miss. */
+    public void convert(NFAParser nfaParser, NFAToDFAConverter target) {
+        convert(nfaParser, target, new ConversionMonitor());
+    }
+    
+    /** As {@link #convert(NFAParser, NFAToDFAConverter)}; aborted conversions are not cached. */
+    public void convert(NFAParser nfaParser, NFAToDFAConverter target, ConversionMonitor monitor) {
+        long startTime = System.nanoTime();
+        String key = canonicalHash(nfaParser);
+        
+        Entry entry = lookup(key);
+        if (entry != null) {
+            try {
+                NFAToDFAConverter cached = AutomatonCodec.decodeDFA(ByteBuffer.wrap(entry.dfa));
+                target.restore(cached.getDFAStates(), cached.getDFATransitions(), cached.getDFAStartState(),
+                    cached.getDFAFinalStates(), cached.getAlphabet());
+                recordSaving(entry.conversionNanos - (System.nanoTime() - startTime));
+                return;
+            } catch (IOException e) {
+                // Only reachable if an entry was damaged; drop it and convert afresh
+                invalidate(key);
+            }
+        }
+        
+        long conversionStart = System.nanoTime();
+        target.convert(nfaParser, monitor);
+        long conversionNanos = System.nanoTime() - conversionStart;
+        long transitions = (long) target.getDFAStates().size() * Math.max(1, target.getAlphabet().size());
+        store(key, new Entry(AutomatonCodec.encodeDFA(target), transitions, conversionNanos));
+    }
+    
+    private synchronized Entry lookup(String key) {
+        Entry entry = memory.get(key);
+        if (entry != null) {
+            hits++;
+            return entry;
+        }
+        if (diskDirectory != null) {
+            entry = readDisk(key);
+            if (entry != null) {
+                diskHits++;
+                putMemory(key, entry);
+                return entry;
+            }
+        }
+        misses++;
+        return null;
+    }
+    
+    private synchronized void store(String key, Entry entry) {
+        putMemory(key, entry);
+        if (diskDirectory != null) {
+            writeDisk(key, entry);
+        }
+    }
+    
+    private synchronized void recordSaving(long nanos) {
+        savedNanos += Math.max(0, nanos);
+    }
+    
+    private synchronized void invalidate(String key) {
+        Entry removed = memory.remove(key);
+        if (removed != null) {
+            cachedTransitions -= removed.transitions;
+        }
+        if (diskDirectory != null) {
+            try {
+                Files.deleteIfExists(diskDirectory.resolve(key + ".dfa"));
+            } catch (IOException e) {
+                diskErrors++;
+            }
+        }
+    }
+    
+    private void putMemory(String key, Entry entry) {
+        // Entries larger than the whole budget are only kept on disk
+        if (entry.transitions > maxTransitions) return;
+        Entry previous = memory.put(key, entry);
+        cachedTransitions += entry.transitions - (previous == null ? 0 : previous.transitions);
+        
+        Iterator<Map.Entry<String, Entry>> eldest = memory.entrySet().iterator();
+        while (cachedTransitions > maxTransitions && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            cachedTransitions -= evicted.transitions;
+            evictions++;
+        }
+    }
+    
+    // Disk entries are the conversion time followed by the codec bytes
+    private Entry readDisk(String key) {
+        Path file = diskDirectory.resolve(key + ".dfa");
+        if (!Files.exists(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long conversionNanos = buffer.getLong();
+            NFAToDFAConverter dfa = AutomatonCodec.decodeDFA(buffer.slice());
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            long transitions = (long) dfa.getDFAStates().size() * Math.max(1, dfa.getAlphabet().size());
+            return new Entry(data, transitions, conversionNanos);
+        } catch (IOException | RuntimeException e) {
+            diskErrors++;
+            return null;
+        }
+    }
+    
+    private void writeDisk(String key, Entry entry) {
+        Path file = diskDirectory.resolve(key + ".dfa");
+        Path temp = diskDirectory.resolve(key + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(8 + entry.dfa.length);
+        buffer.putLong(entry.conversionNanos).put(entry.dfa).flip();
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            diskErrors++;
+        }
+    }
+    
+    public static String canonicalHash(NFAParser nfaParser) {
+        IndexedNFA nfa = IndexedNFA.from(nfaParser);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        ByteBuffer scratch = ByteBuffer.allocate(8);
+        
+        updateInt(digest, scratch, nfa.stateCount());
+        for (String state : nfa.stateNames) updateString(digest, scratch, state);
+        updateInt(digest, scratch, nfa.symbolCount());
+        for (String symbol : nfa.symbols) updateString(digest, scratch, symbol);
+        updateInt(digest, scratch, nfa.startState);
+        for (long word : nfa.finalStates) {
+            scratch.clear();
+            digest.update(scratch.putLong(word).array(), 0, 8);
+        }
+        for (int state = 0; state < nfa.stateCount(); state++) {
+            updateTargets(digest, scratch, nfa.epsilon[state]);
+            for (int symbol = 0; symbol < nfa.symbolCount(); symbol++) {
+                updateTargets(digest, scratch, nfa.delta[state][symbol]);
+            }
+        }
+        
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+    
+    private static void updateInt(MessageDigest digest, ByteBuffer scratch, int value) {
+        scratch.clear();
+        digest.update(scratch.putInt(value).array(), 0, 4);
+    }
+    
+    private static void updateString(MessageDigest digest, ByteBuffer scratch, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        updateInt(digest, scratch, utf8.length);
+        digest.update(utf8);
+    }
+    
+    private static void updateTargets(MessageDigest digest, ByteBuffer scratch, int[] targets) {
+        updateInt(digest, scratch, targets.length);
+        for (int target : targets) updateInt(digest, scratch, target);
+    }
+    
+    public synchronized void clear() {
+        memory.clear();
+        cachedTransitions = 0;
+    }
+    
+    // Cache statistics; disk hits are counted separately from memory hits
+    public synchronized long getHits() { return hits; }
+    public synchronized long getDiskHits() { return diskHits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getDiskErrors() { return diskErrors; }
+    public synchronized long getSavedNanos() { return savedNanos; }
+    public synchronized long getCachedTransitions() { return cachedTransitions; }
+    public synchronized double getHitRate() {
+        long lookups = hits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) (hits + diskHits) / lookups;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,274 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Phase timers, counters and subset-size histograms for parsing and
+ * conversion. An {@link NFAParser} or {@link NFAToDFAConverter} given an
+ * instance fills one {@link Run} per parse or conversion and hands it to
+ * {@link #record}, which adds it to the running totals and passes it to
+ * every {@link Listener}. The hot loops only bump plain counters, and the
+ * histogram is filled from the finished subsets, so a disabled instance, or
+ * none at all, costs one check per run. Totals can be watched over JMX once
+ * {@link #register}ed. One instance may be shared by any number of threads.
+ */
+public final class ConversionMetrics implements ConversionMetricsMBean {
+    public enum Phase {
+        PARSE,      // reading the definition
+        INDEX,      // numbering states and symbols for the bitset engine
+        CONSTRUCT,  // subset construction: moves and epsilon closures
+        NAME,       // formatting subsets as {q0,q1}
+        OUTPUT      // filling the string maps of the DFA
+    }
+    
+    public interface Listener {
+        /** Called on the thread that ran it, after the run is added to the totals. */
+        void recorded(Run run);
+    }
+    
+    /** Bucket b of a histogram counts subsets of b bits, i.e. sizes 2^(b-1) to 2^b - 1. */
+    public static final int HISTOGRAM_BUCKETS = 32;
+    
+    /** One parse or conversion, filled in by the thread doing it. */
+    public static final class Run {
+        private final boolean conversion;
+        private final long[] phaseNanos = new long[Phase.values().length];
+        private final long[] histogram = new long[HISTOGRAM_BUCKETS];
+        private long mark = System.nanoTime();
+        boolean aborted;
+        int lines;
+        int nfaStates;
+        int symbols;
+        int nfaTransitions;
+        int dfaStates;
+        int reusedStates;
+        long subsetsExplored;
+        long moveCalls;
+        long closureCalls;
+        long closureCacheHits;
+        int largestSubset;
+        
+        Run(boolean conversion) {
+            this.conversion = conversion;
+        }
+        
+        /** Restarts the phase clock, leaving out whatever ran since the last {@link #end}. */
+        void begin() {
+            mark = System.nanoTime();
+        }
+        
+        /** Charges the time since the last mark to {@code phase} and starts the next one. */
+        void end(Phase phase) {
+            long now = System.nanoTime();
+            phaseNanos[phase.ordinal()] += now - mark;
+            mark = now;
+        }
+        
+        void add(Phase phase, long nanos) {
+            phaseNanos[phase.ordinal()] += nanos;
+        }
+        
+        void subset(int size) {
+            histogram[bucket(size)]++;
+            largestSubset = Math.max(largestSubset, size);
+        }
+        
+        public boolean isConversion() { return conversion; }
+        public boolean isAborted() { return aborted; }
+        public long getPhaseNanos(Phase phase) { return phaseNanos[phase.ordinal()]; }
+        public int getLines() { return lines; }
+        public int getNFAStates() { return nfaStates; }
+        public int getSymbols() { return symbols; }
+        public int getNFATransitions() { return nfaTransitions; }
+        public int getDFAStates() { return dfaStates; }
+        public int getReusedStates() { return reusedStates; }
+        public long getSubsetsExplored() { return subsetsExplored; }
+        public long getMoveCalls() { return moveCalls; }
+        public long getClosureCalls() { return closureCalls; }
+        public long getClosureCacheHits() { return closureCacheHits; }
+        public int getLargestSubset() { return largestSubset; }
+        public long[] getSubsetSizeHistogram() { return histogram.clone(); }
+        
+        public long getTotalNanos() {
+            long total = 0;
+            for (long nanos : phaseNanos) total += nanos;
+            return total;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(conversion ? "conversion" : "parse");
+            if (aborted) text.append(" (aborted)");
+            for (Phase phase : Phase.values()) {
+                if (phaseNanos[phase.ordinal()] > 0) {
+                    text.append(String.format(Locale.ROOT, " %s=%.3fms", phase.name().toLowerCase(Locale.ROOT),
+                        phaseNanos[phase.ordinal()] / 1e6));
+                }
+            }
+            if (conversion) {
+                text.append(" subsets=").append(subsetsExplored).append(" moves=").append(moveCalls)
+                    .append(" closures=").append(closureCalls).append(" largest=").append(largestSubset);
+            } else {
+                text.append(" lines=").append(lines).append(" transitions=").append(nfaTransitions);
+            }
+            return text.toString();
+        }
+    }
+    
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean enabled = true;
+    private ObjectName registeredName;
+    
+    // Totals, guarded by this
+    private long parses;
+    private long conversions;
+    private long abortedConversions;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] histogram = new long[HISTOGRAM_BUCKETS];
+    private long parsedLines;
+    private long parsedTransitions;
+    private long dfaStates;
+    private long subsetsExplored;
+    private long moveCalls;
+    private long closureCalls;
+    private long closureCacheHits;
+    private int largestSubset;
+    
+    static int bucket(int size) {
+        return 32 - Integer.numberOfLeadingZeros(size);
+    }
+    
+    public void addListener(Listener listener) { listeners.add(listener); }
+    public void removeListener(Listener listener) { listeners.remove(listener); }
+    
+    @Override
+    public boolean isEnabled() { return enabled; }
+    @Override
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    
+    /** A run to fill in, or null while disabled; callers skip all bookkeeping on null. */
+    Run start(boolean conversion) {
+        return enabled ? new Run(conversion) : null;
+    }
+    
+    void record(Run run) {
+        synchronized (this) {
+            if (run.conversion) {
+                conversions++;
+                if (run.aborted) abortedConversions++;
+            } else {
+                parses++;
+            }
+            for (int i = 0; i < phaseNanos.length; i++) {
+                phaseNanos[i] += run.phaseNanos[i];
+            }
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += run.histogram[i];
+            }
+            parsedLines += run.lines;
+            if (!run.conversion) parsedTransitions += run.nfaTransitions;
+            dfaStates += run.dfaStates;
+            subsetsExplored += run.subsetsExplored;
+            moveCalls += run.moveCalls;
+            closureCalls += run.closureCalls;
+            closureCacheHits += run.closureCacheHits;
+            largestSubset = Math.max(largestSubset, run.largestSubset);
+        }
+        for (Listener listener : listeners) {
+            listener.recorded(run);
+        }
+    }
+    
+    /** Registers the totals with the platform MBean server as {@code NFAtoDFA:type=ConversionMetrics,name=<name>}. */
+    public synchronized void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("NFAtoDFA:type=ConversionMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register metrics as " + name, e);
+        }
+    }
+    
+    public synchronized void unregister() {
+        if (registeredName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            // Already gone
+        }
+        registeredName = null;
+    }
+    
+    @Override
+    public synchronized void reset() {
+        parses = 0;
+        conversions = 0;
+        abortedConversions = 0;
+        Arrays.fill(phaseNanos, 0);
+        Arrays.fill(histogram, 0);
+        parsedLines = 0;
+        parsedTransitions = 0;
+        dfaStates = 0;
+        subsetsExplored = 0;
+        moveCalls = 0;
+        closureCalls = 0;
+        closureCacheHits = 0;
+        largestSubset = 0;
+    }
+    
+    @Override public synchronized long getParses() { return parses; }
+    @Override public synchronized long getConversions() { return conversions; }
+    @Override public synchronized long getAbortedConversions() { return abortedConversions; }
+    @Override public synchronized long getParsedLines() { return parsedLines; }
+    @Override public synchronized long getParsedTransitions() { return parsedTransitions; }
+    @Override public synchronized long getDFAStates() { return dfaStates; }
+    @Override public synchronized long getSubsetsExplored() { return subsetsExplored; }
+    @Override public synchronized long getMoveCalls() { return moveCalls; }
+    @Override public synchronized long getClosureCalls() { return closureCalls; }
+    @Override public synchronized long getClosureCacheHits() { return closureCacheHits; }
+    @Override public synchronized int getLargestSubset() { return largestSubset; }
+    @Override public synchronized long[] getSubsetSizeHistogram() { return histogram.clone(); }
+    
+    public synchronized long getPhaseNanos(Phase phase) { return phaseNanos[phase.ordinal()]; }
+    
+    @Override public long getParseMillis() { return getPhaseNanos(Phase.PARSE) / 1_000_000; }
+    @Override public long getIndexMillis() { return getPhaseNanos(Phase.INDEX) / 1_000_000; }
+    @Override public long getConstructMillis() { return getPhaseNanos(Phase.CONSTRUCT) / 1_000_000; }
+    @Override public long getNameMillis() { return getPhaseNanos(Phase.NAME) / 1_000_000; }
+    @Override public long getOutputMillis() { return getPhaseNanos(Phase.OUTPUT) / 1_000_000; }
+    
+    /** Milliseconds spent in each phase, keyed by lower-case phase name; not a JMX attribute. */
+    public synchronized Map<String, Long> getPhaseMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            millis.put(phase.name().toLowerCase(Locale.ROOT), phaseNanos[phase.ordinal()] / 1_000_000);
+        }
+        return millis;
+    }
+    
+    /** Totals as text: time per phase, counters, and the non-empty histogram buckets. */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%d parses, %d conversions (%d aborted)%n", parses, conversions, abortedConversions));
+        long total = 0;
+        for (long nanos : phaseNanos) total += nanos;
+        for (Phase phase : Phase.values()) {
+            long nanos = phaseNanos[phase.ordinal()];
+            report.append(String.format(Locale.ROOT, "  %-10s %10.1f ms %5.1f%%%n", phase.name().toLowerCase(Locale.ROOT),
+                nanos / 1e6, total == 0 ? 0.0 : 100.0 * nanos / total));
+        }
+        report.append(String.format(Locale.ROOT,
+            "  %d subsets explored, %d moves, %d closures (%d cached), largest subset %d, %d DFA states%n",
+            subsetsExplored, moveCalls, closureCalls, closureCacheHits, largestSubset, dfaStates));
+        for (int b = 1; b < histogram.length; b++) {
+            if (histogram[b] == 0) continue;
+            long low = 1L << (b - 1);
+            long high = (1L << b) - 1;
+            report.append(String.format(Locale.ROOT, "  subsets of %d-%d states: %d%n", low, high, histogram[b]));
+        }
+        return report.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,28 @@
+/** JMX view of the running totals of a {@link ConversionMetrics}. */
+public interface ConversionMetricsMBean {
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+    void reset();
+    
+    long getParses();
+    long getConversions();
+    long getAbortedConversions();
+    long getParsedLines();
+    long getParsedTransitions();
+    long getDFAStates();
+    long getSubsetsExplored();
+    long getMoveCalls();
+    long getClosureCalls();
+    long getClosureCacheHits();
+    int getLargestSubset();
+    
+    // Milliseconds spent in each phase, one attribute per phase so generic JMX clients can read them
+    long getParseMillis();
+    long getIndexMillis();
+    long getConstructMillis();
+    long getNameMillis();
+    long getOutputMillis();
+    
+    // Subset counts by size; bucket b holds sizes 2^(b-1) to 2^b - 1
+    long[] getSubsetSizeHistogram();
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+/**
+ * Watches one conversion: reports progress to a listener, enforces a
+ * {@link ConversionBudget} and lets another thread cancel the run. Create a
+ * new monitor per conversion; {@link #cancel()} may be called before the
+ * conversion has even started.
+ */
+public class ConversionMonitor {
+    public interface Listener {
+        /** Called from the converting thread, at most every 100 ms. */
+        void progress(int statesDiscovered, int queueDepth);
+    }
+    
+    private static final long REPORT_INTERVAL_NANOS = 100_000_000L;
+    
+    private final ConversionBudget budget;
+    private final Listener listener;
+    private volatile boolean cancelled;
+    private long startNanos;
+    private long lastReport;
+    
+    public ConversionMonitor() {
+        this(new ConversionBudget(), null);
+    }
+    
+    public ConversionMonitor(ConversionBudget budget, Listener listener) {
+        this.budget = budget;
+        this.listener = listener;
+    }
+    
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    void start() {
+        startNanos = System.nanoTime();
+        lastReport = startNanos;
+    }
+    
+    /** Cheap enough for worker threads to poll; budgets on size are left to {@link #check}. */
+    boolean shouldStop() {
+        return cancelled || System.nanoTime() - startNanos > budget.getMaxNanos();
+    }
+    
+    /** Throws if the run must stop, and otherwise reports progress when it is due. */
+    void check(int statesDiscovered, int queueDepth, long estimatedBytes) {
+        long now = System.nanoTime();
+        ConversionAbortedException.Reason reason = null;
+        if (cancelled) {
+            reason = ConversionAbortedException.Reason.CANCELLED;
+        } else if (statesDiscovered > budget.getMaxStates()) {
+            reason = ConversionAbortedException.Reason.STATE_LIMIT;
+        } else if (estimatedBytes > budget.getMaxBytes()) {
+            reason = ConversionAbortedException.Reason.MEMORY_LIMIT;
+        } else if (now - startNanos > budget.getMaxNanos()) {
+            reason = ConversionAbortedException.Reason.TIME_LIMIT;
+        }
+        if (reason != null) {
+            throw new ConversionAbortedException(reason, statesDiscovered, queueDepth, estimatedBytes, now - startNanos);
+        }
+        
+        if (listener != null && now - lastReport >= REPORT_INTERVAL_NANOS) {
+            lastReport = now;
+            listener.progress(statesDiscovered, queueDepth);
+        }
+    }
+    
+    /** Rough size of a construction's tables: a bitset per subset, about as many memoized closures, and the rows. */
+    static long estimateBytes(int states, int nfaStates, int symbols) {
+        long subsetBytes = 2L * (8L * ((nfaStates + 63) >>> 6) + 48);
+        return states * (subsetBytes + 4L * symbols);
+    }
+}
\ No newline at end of file
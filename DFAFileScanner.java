@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs a {@link CompiledDFA} over every line of a file and reports the lines
+ * the DFA accepts in full. The file is memory-mapped and split into chunks
+ * that are scanned in parallel. A line belongs to the chunk its first byte
+ * falls in: chunks skip the partial line they start in and finish the line
+ * that straddles their end, so every line is counted exactly once.
+ * A trailing {@code '\r'} is not part of the line.
+ */
+public class DFAFileScanner {
+    public static final long DEFAULT_CHUNK_SIZE = 64L << 20;
+    private static final long MAX_MAPPING = Integer.MAX_VALUE - 8;
+    // Mapped past the end of a chunk for the line crossing it; longer lines grow the mapping
+    private static final long LINE_OVERLAP = 64 << 10;
+    
+    public static class Result {
+        private final long matchingLines;
+        private final long[] offsets;
+        private final long bytes;
+        private final long nanos;
+        
+        Result(long matchingLines, long[] offsets, long bytes, long nanos) {
+            this.matchingLines = matchingLines;
+            this.offsets = offsets;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+        
+        public long getMatchingLines() { return matchingLines; }
+        // Byte offsets of matching line starts in file order; empty unless offsets were collected
+        public long[] getOffsets() { return offsets; }
+        public long getBytes() { return bytes; }
+        public long getNanos() { return nanos; }
+        public double getBytesPerSecond() { return nanos == 0 ? 0 : bytes * 1e9 / nanos; }
+    }
+    
+    private static final class ChunkResult {
+        long count;
+        long[] offsets = new long[16];
+        int size;
+        
+        void add(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+    }
+    
+    private final CompiledDFA dfa;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean collectOffsets;
+    
+    public DFAFileScanner(CompiledDFA dfa) {
+        this.dfa = dfa;
+    }
+    
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize < 1 || chunkSize > MAX_MAPPING / 2) {
+            throw new IllegalArgumentException("Chunk size out of range: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+    
+    public void setCollectOffsets(boolean collectOffsets) { this.collectOffsets = collectOffsets; }
+    
+    public Result scan(Path file) throws IOException {
+        long startTime = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+            
+            List<ChunkResult> results = new ArrayList<>(chunks);
+            if (chunks == 1 || parallelism == 1) {
+                for (int i = 0; i < chunks; i++) {
+                    results.add(scanChunk(channel, size, i * chunkSize, Math.min(size, (i + 1) * chunkSize)));
+                }
+            } else {
+                ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, chunks));
+                try {
+                    List<Future<ChunkResult>> futures = new ArrayList<>(chunks);
+                    for (int i = 0; i < chunks; i++) {
+                        long from = i * chunkSize;
+                        long to = Math.min(size, from + chunkSize);
+                        futures.add(pool.submit(() -> scanChunk(channel, size, from, to)));
+                    }
+                    for (Future<ChunkResult> future : futures) {
+                        results.add(future.get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Scan interrupted", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Scan failed", e.getCause());
+                } finally {
+                    pool.shutdownNow();
+                }
+            }
+            
+            long count = 0;
+            int offsetCount = 0;
+            for (ChunkResult result : results) {
+                count += result.count;
+                offsetCount += result.size;
+            }
+            long[] offsets = new long[offsetCount];
+            int position = 0;
+            for (ChunkResult result : results) {
+                System.arraycopy(result.offsets, 0, offsets, position, result.size);
+                position += result.size;
+            }
+            return new Result(count, offsets, size, System.nanoTime() - startTime);
+        }
+    }
+    
+    private ChunkResult scanChunk(FileChannel channel, long size, long from, long to) throws IOException {
+        ChunkResult result = new ChunkResult();
+        if (from >= size) {
+            return result;
+        }
+        // Map one byte early to see whether the chunk starts on a line boundary
+        long base = from > 0 ? from - 1 : 0;
+        long length = Math.min(to - base + LINE_OVERLAP, size - base);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+        int limit = (int) length;
+        int end = (int) (to - base);
+        
+        // A line that crosses into this chunk belongs to the previous one
+        int i = (int) (from - base);
+        if (from > 0 && buffer.get(i - 1) != '\n') {
+            while (i < end && buffer.get(i) != '\n') i++;
+            i++;
+        }
+        
+        int dead = dfa.deadState();
+        while (i < end) {
+            int lineStart = i;
+            int state = dfa.startState();
+            int beforeLast = state;
+            byte last = 0;
+            while (true) {
+                if (i == limit) {
+                    if (base + limit == size) break;
+                    length = grownMapping(length, size - base, base + lineStart);
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+                    limit = (int) length;
+                }
+                byte b = buffer.get(i);
+                if (b == '\n') break;
+                beforeLast = state;
+                if (state != dead) {
+                    state = dfa.step(state, b);
+                }
+                last = b;
+                i++;
+            }
+            if (last == '\r') {
+                state = beforeLast;
+            }
+            if (state != dead && dfa.isAccepting(state)) {
+                result.count++;
+                if (collectOffsets) {
+                    result.add(base + lineStart);
+                }
+            }
+            if (i >= limit) break;
+            i++;
+        }
+        return result;
+    }
+    
+    /** Doubles a mapping that ends inside the line at {@code lineOffset}, up to the most one mapping can hold. */
+    private static long grownMapping(long length, long available, long lineOffset) throws IOException {
+        if (length >= MAX_MAPPING) {
+            throw new IOException("Line at byte " + lineOffset + " is too long to map (over " + MAX_MAPPING + " bytes)");
+        }
+        return Math.min(Math.min(length * 2, MAX_MAPPING), available);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+import java.util.*;
+
+/**
+ * Minimizes a converted DFA with Hopcroft's partition refinement. The result
+ * is exposed through the same getters as {@link NFAToDFAConverter}, so it can be
+ * handed to {@link AutomataVisualizer} or printed unchanged.
+ */
+public class DFAMinimizer {
+    private Map<String, Map<String, String>> dfaTransitions = new HashMap<>();
+    private Set<String> dfaStates = new HashSet<>();
+    private Set<String> dfaFinalStates = new HashSet<>();
+    private String dfaStartState;
+    private Set<String> alphabet = new HashSet<>();
+    private int originalStateCount;
+    private long minimizationNanos;
+    
+    public void minimize(NFAToDFAConverter converter, Set<String> alphabet) {
+        long startTime = System.nanoTime();
+        clear();
+        this.alphabet = new HashSet<>(alphabet);
+        
+        String[] names = converter.getDFAStates().toArray(new String[0]);
+        Arrays.sort(names);
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+        String[] symbols = alphabet.toArray(new String[0]);
+        Arrays.sort(symbols);
+        
+        int n = names.length;
+        int k = symbols.length;
+        int[] delta = new int[n * k];
+        for (int state = 0; state < n; state++) {
+            Map<String, String> row = converter.getDFATransitions().getOrDefault(names[state], Collections.emptyMap());
+            for (int symbol = 0; symbol < k; symbol++) {
+                String target = row.get(symbols[symbol]);
+                if (target == null) {
+                    throw new IllegalArgumentException("DFA is not complete: no transition from "
+                        + names[state] + " on " + symbols[symbol]);
+                }
+                delta[state * k + symbol] = ids.get(target);
+            }
+        }
+        boolean[] accepting = new boolean[n];
+        for (String state : converter.getDFAFinalStates()) {
+            accepting[ids.get(state)] = true;
+        }
+        
+        int[] blockOf = refine(delta, n, k, accepting);
+        build(names, symbols, delta, blockOf, accepting, ids.get(converter.getDFAStartState()));
+        
+        originalStateCount = n;
+        minimizationNanos = System.nanoTime() - startTime;
+    }
+    
+    private void clear() {
+        dfaTransitions.clear();
+        dfaStates.clear();
+        dfaFinalStates.clear();
+        dfaStartState = null;
+        originalStateCount = 0;
+        minimizationNanos = 0;
+    }
+    
+    /**
+     * Hopcroft's algorithm. Blocks are contiguous ranges of {@code elements};
+     * states that hit the current splitter are swapped to the front of their
+     * block, which is then cut in two when only part of it was hit.
+     */
+    private static int[] refine(int[] delta, int n, int k, boolean[] accepting) {
+        // Inverse transitions in CSR form: predecessors of t on a are inverse[inverseStart[a * (n + 1) + t] ..]
+        int[] inverseStart = new int[k * (n + 1) + 1];
+        for (int state = 0; state < n; state++) {
+            for (int symbol = 0; symbol < k; symbol++) {
+                inverseStart[symbol * (n + 1) + delta[state * k + symbol] + 1]++;
+            }
+        }
+        for (int i = 1; i < inverseStart.length; i++) {
+            inverseStart[i] += inverseStart[i - 1];
+        }
+        int[] inverse = new int[n * k];
+        int[] fill = Arrays.copyOf(inverseStart, inverseStart.length);
+        for (int state = 0; state < n; state++) {
+            for (int symbol = 0; symbol < k; symbol++) {
+                inverse[fill[symbol * (n + 1) + delta[state * k + symbol]]++] = state;
+            }
+        }
+        
+        int[] elements = new int[n];
+        int[] position = new int[n];
+        int[] blockOf = new int[n];
+        int[] blockStart = new int[n + 1];
+        int[] blockEnd = new int[n + 1];
+        int[] markedCount = new int[n + 1];
+        int blocks = 0;
+        
+        int cursor = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            boolean wantAccepting = pass == 0;
+            int begin = cursor;
+            for (int state = 0; state < n; state++) {
+                if (accepting[state] == wantAccepting) {
+                    elements[cursor] = state;
+                    position[state] = cursor++;
+                    blockOf[state] = blocks;
+                }
+            }
+            if (cursor > begin) {
+                blockStart[blocks] = begin;
+                blockEnd[blocks] = cursor;
+                blocks++;
+            }
+        }
+        if (k == 0 || blocks < 2) {
+            return blockOf;
+        }
+        
+        boolean[] pending = new boolean[n * k];
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        int smaller = blockEnd[0] - blockStart[0] <= blockEnd[1] - blockStart[1] ? 0 : 1;
+        for (int symbol = 0; symbol < k; symbol++) {
+            pending[smaller * k + symbol] = true;
+            worklist.add(smaller * k + symbol);
+        }
+        
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+        while (!worklist.isEmpty()) {
+            int entry = worklist.poll();
+            int block = entry / k;
+            int symbol = entry % k;
+            pending[entry] = false;
+            
+            // Snapshot the splitter, since marking reorders elements inside blocks
+            int size = blockEnd[block] - blockStart[block];
+            System.arraycopy(elements, blockStart[block], splitter, 0, size);
+            
+            int touchedCount = 0;
+            for (int i = 0; i < size; i++) {
+                int target = splitter[i];
+                int base = symbol * (n + 1) + target;
+                for (int j = inverseStart[base]; j < inverseStart[base + 1]; j++) {
+                    int state = inverse[j];
+                    int b = blockOf[state];
+                    int markedEnd = blockStart[b] + markedCount[b];
+                    if (position[state] < markedEnd) continue;
+                    if (markedCount[b] == 0) {
+                        touched[touchedCount++] = b;
+                    }
+                    int swapped = elements[markedEnd];
+                    elements[markedEnd] = state;
+                    elements[position[state]] = swapped;
+                    position[swapped] = position[state];
+                    position[state] = markedEnd;
+                    markedCount[b]++;
+                }
+            }
+            
+            for (int t = 0; t < touchedCount; t++) {
+                int b = touched[t];
+                int marked = markedCount[b];
+                markedCount[b] = 0;
+                if (marked == blockEnd[b] - blockStart[b]) continue;
+                
+                int created = blocks++;
+                blockStart[created] = blockStart[b];
+                blockEnd[created] = blockStart[b] + marked;
+                blockStart[b] = blockEnd[created];
+                for (int i = blockStart[created]; i < blockEnd[created]; i++) {
+                    blockOf[elements[i]] = created;
+                }
+                
+                boolean createdIsSmaller = marked <= blockEnd[b] - blockStart[b];
+                for (int c = 0; c < k; c++) {
+                    int add = pending[b * k + c] || createdIsSmaller ? created : b;
+                    if (!pending[add * k + c]) {
+                        pending[add * k + c] = true;
+                        worklist.add(add * k + c);
+                    }
+                }
+            }
+        }
+        return blockOf;
+    }
+    
+    private void build(String[] names, String[] symbols, int[] delta, int[] blockOf,
+                       boolean[] accepting, int start) {
+        int k = symbols.length;
+        Map<Integer, String> blockNames = new HashMap<>();
+        for (int state = 0; state < names.length; state++) {
+            // Names are sorted, so the first member seen is the smallest
+            blockNames.putIfAbsent(blockOf[state], names[state]);
+            if (names[state].equals(NFAToDFAConverter.DEAD_STATE)) {
+                blockNames.put(blockOf[state], names[state]);
+            }
+        }
+        blockNames.put(blockOf[start], names[start]);
+        
+        for (int state = 0; state < names.length; state++) {
+            String name = blockNames.get(blockOf[state]);
+            if (!dfaStates.add(name)) continue;
+            if (accepting[state]) {
+                dfaFinalStates.add(name);
+            }
+            if (k > 0) {
+                Map<String, String> row = new HashMap<>();
+                for (int symbol = 0; symbol < k; symbol++) {
+                    row.put(symbols[symbol], blockNames.get(blockOf[delta[state * k + symbol]]));
+                }
+                dfaTransitions.put(name, row);
+            }
+        }
+        dfaStartState = blockNames.get(blockOf[start]);
+    }
+    
+    public String generateDFAOutput() {
+        return NFAToDFAConverter.formatDFA(dfaStates, dfaTransitions, dfaStartState, dfaFinalStates, alphabet);
+    }
+    
+    // Getters for the minimized DFA
+    public Set<String> getDFAStates() { return dfaStates; }
+    public Map<String, Map<String, String>> getDFATransitions() { return dfaTransitions; }
+    public String getDFAStartState() { return dfaStartState; }
+    public Set<String> getDFAFinalStates() { return dfaFinalStates; }
+    
+    // Statistics of the last minimization
+    public int getOriginalStateCount() { return originalStateCount; }
+    public int getMinimizedStateCount() { return dfaStates.size(); }
+    public long getMinimizationNanos() { return minimizationNanos; }
+}
\ No newline at end of file
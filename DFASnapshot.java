@@ -0,0 +1,166 @@
+import java.util.*;
+
+/**
+ * Immutable DFA produced from an {@link NFASnapshot}. Everything is kept in
+ * flat int arrays: the transition table, with one column per class of
+ * symbols that behave alike (see {@link SymbolClasses}) and {@link #DEAD}
+ * for the implicit dead state, and the NFA states of every DFA state in one
+ * shared array. Names like {@code {q0,q1}} are only built when asked for,
+ * from the NFA's name table, so a snapshot is a fraction of the size of the
+ * string maps in {@link NFAToDFAConverter}. States are numbered in
+ * breadth-first discovery order from the start state, which is always 0.
+ *
+ * {@link #convert} is a pure function: it shares nothing between calls and
+ * its result can be read from any number of threads.
+ */
+public final class DFASnapshot {
+    public static final int DEAD = SubsetConstruction.DEAD;
+    
+    private final String[] nfaStates;
+    private final String[] symbols;
+    private final int[] memberStart;
+    private final int[] members;
+    private final int[] classOf;
+    private final int classCount;
+    private final int[] transitions;
+    private final long[] accepting;
+    private final List<String> alphabet;
+    
+    private DFASnapshot(String[] nfaStates, String[] symbols, int[] memberStart, int[] members,
+                        int[] classOf, int classCount, int[] transitions, long[] accepting) {
+        this.nfaStates = nfaStates;
+        this.symbols = symbols;
+        this.memberStart = memberStart;
+        this.members = members;
+        this.classOf = classOf;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepting = accepting;
+        this.alphabet = Collections.unmodifiableList(Arrays.asList(symbols));
+    }
+    
+    public static DFASnapshot convert(NFASnapshot nfa) {
+        return convert(nfa, new ConversionMonitor());
+    }
+    
+    /** As {@link #convert(NFASnapshot)}, reporting to {@code monitor}, which must not be shared with other calls. */
+    public static DFASnapshot convert(NFASnapshot snapshot, ConversionMonitor monitor) {
+        if (snapshot.nfa.startState < 0) {
+            throw new IllegalArgumentException("Start state is not defined");
+        }
+        SymbolClasses classes = SymbolClasses.of(snapshot.nfa);
+        IndexedNFA nfa = classes.reduced;
+        SubsetConstruction construction = new SubsetConstruction(nfa, monitor);
+        construction.run();
+        
+        int stateCount = construction.stateCount();
+        int classCount = nfa.symbolCount();
+        int[] memberStart = new int[stateCount + 1];
+        for (int state = 0; state < stateCount; state++) {
+            memberStart[state + 1] = memberStart[state] + construction.subset(state).cardinality();
+        }
+        int[] members = new int[memberStart[stateCount]];
+        int[] transitions = new int[stateCount * classCount];
+        long[] accepting = new long[IndexedNFA.wordsFor(stateCount)];
+        for (int state = 0; state < stateCount; state++) {
+            StateSet subset = construction.subset(state);
+            int next = memberStart[state];
+            for (int w = 0; w < subset.words.length; w++) {
+                long word = subset.words[w];
+                while (word != 0) {
+                    members[next++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            if (nfa.isFinal(subset)) {
+                accepting[state >>> 6] |= 1L << state;
+            }
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                transitions[state * classCount + symbolClass] = construction.transition(state, symbolClass);
+            }
+        }
+        return new DFASnapshot(nfa.stateNames, classes.symbols, memberStart, members, classes.classOf, classCount,
+            transitions, accepting);
+    }
+    
+    public int stateCount() { return memberStart.length - 1; }
+    public int symbolCount() { return symbols.length; }
+    public String symbol(int symbol) { return symbols[symbol]; }
+    public int startState() { return 0; }
+    public boolean isAccepting(int state) { return (accepting[state >>> 6] & (1L << state)) != 0; }
+    public List<String> getAlphabet() { return alphabet; }
+    
+    /** The target of {@code state} on {@code symbol}, or {@link #DEAD}. */
+    public int transition(int state, int symbol) {
+        return transitions[state * classCount + classOf[symbol]];
+    }
+    
+    /** Whether some transition leads to the dead state, which the string form lists as {@value NFAToDFAConverter#DEAD_STATE}. */
+    public boolean hasDeadState() {
+        for (int target : transitions) {
+            if (target == DEAD) return true;
+        }
+        return false;
+    }
+    
+    /** The NFA states making up {@code state}, in ascending order, as a copy. */
+    public int[] nfaStates(int state) {
+        return Arrays.copyOfRange(members, memberStart[state], memberStart[state + 1]);
+    }
+    
+    /** The same name {@link NFAToDFAConverter} gives this state. */
+    public String stateName(int state) {
+        StringBuilder name = new StringBuilder("{");
+        for (int i = memberStart[state]; i < memberStart[state + 1]; i++) {
+            if (i > memberStart[state]) {
+                name.append(',');
+            }
+            name.append(nfaStates[members[i]]);
+        }
+        return name.append('}').toString();
+    }
+    
+    /** Names of all states in id order; a view that formats each name when it is read. */
+    public List<String> getStateNames() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return stateName(index);
+            }
+            
+            @Override
+            public int size() {
+                return stateCount();
+            }
+        };
+    }
+    
+    /** The {@link NFAToDFAConverter#generateDFAOutput()} format, listing states in id order. */
+    public String generateDFAOutput() {
+        Set<String> states = new LinkedHashSet<>();
+        Set<String> finals = new LinkedHashSet<>();
+        Map<String, Map<String, String>> rows = new HashMap<>();
+        String[] names = getStateNames().toArray(new String[0]);
+        for (int state = 0; state < names.length; state++) {
+            states.add(names[state]);
+            if (isAccepting(state)) {
+                finals.add(names[state]);
+            }
+            Map<String, String> row = new HashMap<>();
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                int target = transition(state, symbol);
+                row.put(symbols[symbol], target == DEAD ? NFAToDFAConverter.DEAD_STATE : names[target]);
+            }
+            rows.put(names[state], row);
+        }
+        if (hasDeadState()) {
+            states.add(NFAToDFAConverter.DEAD_STATE);
+            Map<String, String> row = new HashMap<>();
+            for (String symbol : symbols) {
+                row.put(symbol, NFAToDFAConverter.DEAD_STATE);
+            }
+            rows.put(NFAToDFAConverter.DEAD_STATE, row);
+        }
+        return NFAToDFAConverter.formatDFA(states, rows, names[0], finals, new HashSet<>(alphabet));
+    }
+}
\ No newline at end of file
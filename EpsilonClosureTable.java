@@ -0,0 +1,181 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Epsilon closures of every NFA state, computed once up front. Epsilon cycles
+ * are collapsed with Tarjan's SCC algorithm so all states of a component share
+ * one closure bitset, and the condensation is then filled in reverse
+ * topological order. States whose closure is only themselves store no bitset,
+ * which keeps NFAs with few epsilon edges well below n^2 / 64 words. Closures
+ * of sets are unions of the cached bitsets; those unions are memoized per
+ * input set and counted as hits and misses. The memo is concurrent so
+ * parallel subset construction can share one table.
+ */
+final class EpsilonClosureTable {
+    private final int words;
+    private final long[][] closures;
+    private final Map<StateSet, StateSet> memo = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    EpsilonClosureTable(IndexedNFA nfa) {
+        this.words = nfa.words;
+        this.closures = new long[nfa.stateCount()][];
+        build(nfa.epsilon);
+    }
+    
+    private void build(int[][] epsilon) {
+        int n = epsilon.length;
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        int[] component = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] sccStack = new int[n];
+        int[] callStack = new int[n];
+        int[] edgeCursor = new int[n];
+        Arrays.fill(index, -1);
+        
+        int nextIndex = 0;
+        int sccTop = 0;
+        int componentCount = 0;
+        
+        // Iterative Tarjan, so deep epsilon chains cannot overflow the Java stack
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) continue;
+            int callTop = 0;
+            callStack[callTop++] = root;
+            index[root] = lowLink[root] = nextIndex++;
+            sccStack[sccTop++] = root;
+            onStack[root] = true;
+            
+            while (callTop > 0) {
+                int state = callStack[callTop - 1];
+                int[] successors = epsilon[state];
+                if (edgeCursor[state] < successors.length) {
+                    int next = successors[edgeCursor[state]++];
+                    if (index[next] == -1) {
+                        index[next] = lowLink[next] = nextIndex++;
+                        sccStack[sccTop++] = next;
+                        onStack[next] = true;
+                        callStack[callTop++] = next;
+                    } else if (onStack[next]) {
+                        lowLink[state] = Math.min(lowLink[state], index[next]);
+                    }
+                    continue;
+                }
+                
+                callTop--;
+                if (callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[state]);
+                }
+                if (lowLink[state] == index[state]) {
+                    // Components are emitted sinks first, so every successor component is already closed
+                    int member;
+                    int first = sccTop;
+                    do {
+                        member = sccStack[--first];
+                        onStack[member] = false;
+                        component[member] = componentCount;
+                    } while (member != state);
+                    if (sccTop - first == 1 && epsilon[state].length == 0) {
+                        sccTop = first;
+                        componentCount++;
+                        continue;
+                    }
+                    
+                    long[] closure = new long[words];
+                    for (int i = first; i < sccTop; i++) {
+                        closure[sccStack[i] >>> 6] |= 1L << sccStack[i];
+                    }
+                    for (int i = first; i < sccTop; i++) {
+                        for (int next : epsilon[sccStack[i]]) {
+                            if (component[next] != componentCount) {
+                                addClosure(closure, next);
+                            }
+                        }
+                    }
+                    for (int i = first; i < sccTop; i++) {
+                        closures[sccStack[i]] = closure;
+                    }
+                    sccTop = first;
+                    componentCount++;
+                }
+            }
+        }
+    }
+    
+    private static void or(long[] target, long[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= source[i];
+        }
+    }
+    
+    private void addClosure(long[] target, int state) {
+        if (closures[state] == null) {
+            target[state >>> 6] |= 1L << state;
+        } else {
+            or(target, closures[state]);
+        }
+    }
+    
+    /** Returns a fresh bitset the caller may modify. */
+    long[] closure(int state) {
+        long[] result = new long[words];
+        addClosure(result, state);
+        return result;
+    }
+    
+    boolean closureIntersects(int state, long[] set) {
+        if (closures[state] == null) {
+            return (set[state >>> 6] & (1L << state)) != 0;
+        }
+        long[] closure = closures[state];
+        for (int i = 0; i < closure.length; i++) {
+            if ((closure[i] & set[i]) != 0) return true;
+        }
+        return false;
+    }
+    
+    StateSet closure(StateSet set) {
+        StateSet cached = memo.get(set);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        StateSet closure = new StateSet(union(set.words));
+        StateSet raced = memo.putIfAbsent(set, closure);
+        return raced != null ? raced : closure;
+    }
+    
+    long[] union(long[] set) {
+        long[] result = new long[words];
+        for (int w = 0; w < set.length; w++) {
+            long word = set[w];
+            while (word != 0) {
+                int state = (w << 6) + Long.numberOfTrailingZeros(word);
+                // A state already covered came in through a closure that contains its own
+                if ((result[w] & (1L << state)) == 0) {
+                    addClosure(result, state);
+                }
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+    
+    /** Drops the memoized set closures, keeping only the per-state ones. */
+    void trim() {
+        memo.clear();
+    }
+    
+    long getHits() {
+        return hits.sum();
+    }
+    
+    long getMisses() {
+        return misses.sum();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+import java.util.*;
+
+/**
+ * Fruchterman-Reingold style spring embedder. Edges pull their endpoints
+ * together with force d^2, every pair of states pushes apart with force 1/d,
+ * and a weak pull towards the centre of mass keeps disconnected parts
+ * together. Moves are capped by a temperature that cools linearly.
+ *
+ * Repulsion is approximated with a Barnes-Hut quadtree rebuilt every
+ * iteration: a cell whose size seen from a state is below {@link #THETA}
+ * acts as one body at its centre of mass, so an iteration costs
+ * O(n log n + e) instead of O(n^2). Starting positions are seeded, so the
+ * same graph always gets the same layout.
+ */
+public class ForceDirectedLayout implements LayoutEngine {
+    private static final double THETA = 0.9;
+    private static final double GRAVITY = 0.02;
+    private static final long PUBLISH_INTERVAL_NANOS = 50_000_000L;
+    
+    private final int iterations;
+    
+    public ForceDirectedLayout() {
+        this(300);
+    }
+    
+    public ForceDirectedLayout(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Layout needs at least one iteration: " + iterations);
+        }
+        this.iterations = iterations;
+    }
+    
+    @Override
+    public void layout(int stateCount, int[] edgeFrom, int[] edgeTo, int startState,
+                       double[] x, double[] y, Progress progress) {
+        if (stateCount == 0) return;
+        double side = Math.sqrt(stateCount);
+        Random random = new Random(stateCount);
+        for (int i = 0; i < stateCount; i++) {
+            x[i] = random.nextDouble() * side;
+            y[i] = random.nextDouble() * side;
+        }
+        
+        double[] dx = new double[stateCount];
+        double[] dy = new double[stateCount];
+        QuadTree tree = new QuadTree(stateCount);
+        double initialTemperature = side / 10 + 1;
+        long lastPublish = System.nanoTime();
+        
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            tree.build(x, y, stateCount);
+            for (int i = 0; i < stateCount; i++) {
+                tree.repulsion(i, x[i], y[i], dx, dy);
+            }
+            for (int e = 0; e < edgeFrom.length; e++) {
+                int a = edgeFrom[e];
+                int b = edgeTo[e];
+                if (a == b) continue;
+                double ex = x[a] - x[b];
+                double ey = y[a] - y[b];
+                double d = Math.sqrt(ex * ex + ey * ey);
+                // Direction (ex, ey) / d times force d^2
+                dx[a] -= ex * d;
+                dy[a] -= ey * d;
+                dx[b] += ex * d;
+                dy[b] += ey * d;
+            }
+            
+            double temperature = initialTemperature * (1 - (double) iteration / iterations) + 0.01;
+            double centreX = tree.centreOfMassX();
+            double centreY = tree.centreOfMassY();
+            for (int i = 0; i < stateCount; i++) {
+                double mx = dx[i] - GRAVITY * (x[i] - centreX);
+                double my = dy[i] - GRAVITY * (y[i] - centreY);
+                double length = Math.sqrt(mx * mx + my * my);
+                if (length > temperature) {
+                    mx *= temperature / length;
+                    my *= temperature / length;
+                }
+                x[i] += mx;
+                y[i] += my;
+            }
+            
+            long now = System.nanoTime();
+            if (now - lastPublish >= PUBLISH_INTERVAL_NANOS) {
+                if (!progress.update(x, y)) return;
+                lastPublish = now;
+            }
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "Force-directed";
+    }
+    
+    /** Point-region quadtree over unit-mass bodies, kept in flat arrays and reused across iterations. */
+    private static final class QuadTree {
+        private static final int EMPTY = -1;
+        private static final int INTERNAL = -2;
+        // A leaf holding bodies too close to separate
+        private static final int CLUSTER = -3;
+        private static final int MAX_DEPTH = 48;
+        
+        private double[] cellX;
+        private double[] cellY;
+        private double[] half;
+        private double[] mass;
+        private double[] massX;
+        private double[] massY;
+        private int[] body;
+        private int[] firstChild;
+        private int nodes;
+        private final int[] stack = new int[4 * MAX_DEPTH + 8];
+        
+        QuadTree(int bodies) {
+            allocate(Math.max(16, 2 * bodies));
+        }
+        
+        private void allocate(int capacity) {
+            cellX = cellX == null ? new double[capacity] : Arrays.copyOf(cellX, capacity);
+            cellY = cellY == null ? new double[capacity] : Arrays.copyOf(cellY, capacity);
+            half = half == null ? new double[capacity] : Arrays.copyOf(half, capacity);
+            mass = mass == null ? new double[capacity] : Arrays.copyOf(mass, capacity);
+            massX = massX == null ? new double[capacity] : Arrays.copyOf(massX, capacity);
+            massY = massY == null ? new double[capacity] : Arrays.copyOf(massY, capacity);
+            body = body == null ? new int[capacity] : Arrays.copyOf(body, capacity);
+            firstChild = firstChild == null ? new int[capacity] : Arrays.copyOf(firstChild, capacity);
+        }
+        
+        private int newNode(double x, double y, double size) {
+            if (nodes == body.length) {
+                allocate(nodes * 2);
+            }
+            int node = nodes++;
+            cellX[node] = x;
+            cellY[node] = y;
+            half[node] = size;
+            mass[node] = 0;
+            massX[node] = 0;
+            massY[node] = 0;
+            body[node] = EMPTY;
+            return node;
+        }
+        
+        void build(double[] x, double[] y, int count) {
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                minX = Math.min(minX, x[i]);
+                maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            nodes = 0;
+            newNode((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 + 1e-9);
+            for (int i = 0; i < count; i++) {
+                insert(i, x[i], y[i]);
+            }
+            for (int node = 0; node < nodes; node++) {
+                if (mass[node] > 0) {
+                    massX[node] /= mass[node];
+                    massY[node] /= mass[node];
+                }
+            }
+        }
+        
+        private void insert(int i, double px, double py) {
+            int node = 0;
+            for (int depth = 0; ; depth++) {
+                mass[node] += 1;
+                massX[node] += px;
+                massY[node] += py;
+                if (body[node] == EMPTY) {
+                    body[node] = i;
+                    return;
+                }
+                if (body[node] == CLUSTER) return;
+                if (body[node] >= 0) {
+                    if (depth == MAX_DEPTH) {
+                        body[node] = CLUSTER;
+                        return;
+                    }
+                    split(node, px, py);
+                }
+                node = firstChild[node] + quadrant(node, px, py);
+            }
+        }
+        
+        // Turns a one-body leaf into an internal node and moves its body down a level
+        private void split(int node, double px, double py) {
+            // The sums already include the body being inserted, so what remains is the old one
+            double oldX = massX[node] - px;
+            double oldY = massY[node] - py;
+            double quarter = half[node] / 2;
+            int first = nodes;
+            for (int q = 0; q < 4; q++) {
+                newNode(cellX[node] + ((q & 1) == 0 ? -quarter : quarter),
+                        cellY[node] + ((q & 2) == 0 ? -quarter : quarter), quarter);
+            }
+            int child = first + quadrant(node, oldX, oldY);
+            body[child] = body[node];
+            mass[child] = 1;
+            massX[child] = oldX;
+            massY[child] = oldY;
+            firstChild[node] = first;
+            body[node] = INTERNAL;
+        }
+        
+        private int quadrant(int node, double px, double py) {
+            return (px < cellX[node] ? 0 : 1) | (py < cellY[node] ? 0 : 2);
+        }
+        
+        /** Sets (dx[i], dy[i]) to the repulsion on body i at (px, py). */
+        void repulsion(int i, double px, double py, double[] dx, double[] dy) {
+            double fx = 0;
+            double fy = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                if (mass[node] == 0 || body[node] == i) continue;
+                double ex = px - massX[node];
+                double ey = py - massY[node];
+                double d2 = ex * ex + ey * ey;
+                double size = 2 * half[node];
+                if (body[node] != INTERNAL || size * size < THETA * THETA * d2) {
+                    // Force mass / d along the unit vector (ex, ey) / d
+                    if (d2 > 1e-18) {
+                        fx += ex * mass[node] / d2;
+                        fy += ey * mass[node] / d2;
+                    }
+                } else {
+                    int first = firstChild[node];
+                    stack[top++] = first;
+                    stack[top++] = first + 1;
+                    stack[top++] = first + 2;
+                    stack[top++] = first + 3;
+                }
+            }
+            dx[i] = fx;
+            dy[i] = fy;
+        }
+        
+        double centreOfMassX() {
+            return massX[0];
+        }
+        
+        double centreOfMassY() {
+            return massY[0];
+        }
+    }
+}
\ No newline at end of file
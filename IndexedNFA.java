@@ -0,0 +1,274 @@
+import java.util.*;
+
+/**
+ * Int-indexed view of a parsed NFA. States and symbols are interned to dense
+ * ids in sorted name order, so walking a state bitset in ascending bit order
+ * yields the same ordering {@code formatStateSet} produces.
+ */
+final class IndexedNFA {
+    final String[] stateNames;
+    final String[] symbols;
+    final int[][][] delta;
+    final int[][] epsilon;
+    final int startState;
+    final long[] finalStates;
+    final int words;
+    
+    private IndexedNFA(String[] stateNames, String[] symbols, int[][][] delta, int[][] epsilon,
+                       int startState, long[] finalStates) {
+        this.stateNames = stateNames;
+        this.symbols = symbols;
+        this.delta = delta;
+        this.epsilon = epsilon;
+        this.startState = startState;
+        this.finalStates = finalStates;
+        this.words = wordsFor(stateNames.length);
+    }
+    
+    static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+    
+    static IndexedNFA from(NFAParser parser) {
+        return from(parser, alphabet(parser));
+    }
+    
+    /** The declared symbols of {@code parser}, sorted. */
+    static String[] alphabet(NFAParser parser) {
+        SymbolTable symbolTable = parser.symbolTable();
+        BitSet declared = parser.declaredSymbols();
+        String[] symbols = new String[declared.cardinality()];
+        int next = 0;
+        for (int id = declared.nextSetBit(0); id >= 0; id = declared.nextSetBit(id + 1)) {
+            symbols[next++] = symbolTable.name(id);
+        }
+        Arrays.sort(symbols);
+        return symbols;
+    }
+    
+    /** The NFA over {@code symbols}, a sorted subset of the alphabet; edges on other symbols are left out. */
+    static IndexedNFA from(NFAParser parser, String[] symbols) {
+        // Every interned name can show up in a subset, not only declared states
+        SymbolTable stateTable = parser.stateTable();
+        int stateCount = stateTable.size();
+        Integer[] order = new Integer[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> stateTable.name(a).compareTo(stateTable.name(b)));
+        String[] stateNames = new String[stateCount];
+        int[] stateIds = new int[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            stateNames[i] = stateTable.name(order[i]);
+            stateIds[order[i]] = i;
+        }
+        
+        SymbolTable symbolTable = parser.symbolTable();
+        // Transitions on symbols outside the alphabet are never followed by the converter
+        int[] symbolIds = new int[symbolTable.size()];
+        Arrays.fill(symbolIds, -1);
+        for (int i = 0; i < symbols.length; i++) {
+            symbolIds[symbolTable.find(symbols[i])] = i;
+        }
+        int epsilonSymbol = symbolTable.find(NFAParser.EPSILON);
+        
+        // Counting pass, then fill, then sort and de-duplicate every target list
+        int edges = parser.edgeCount();
+        int[] deltaCounts = new int[stateCount * symbols.length];
+        int[] epsilonCounts = new int[stateCount];
+        for (int edge = 0; edge < edges; edge++) {
+            int from = stateIds[parser.edgeFrom(edge)];
+            int symbol = parser.edgeSymbol(edge);
+            if (symbol == epsilonSymbol) {
+                epsilonCounts[from]++;
+            }
+            if (symbolIds[symbol] >= 0) {
+                deltaCounts[from * symbols.length + symbolIds[symbol]]++;
+            }
+        }
+        
+        int[] none = new int[0];
+        int[][][] delta = new int[stateCount][symbols.length][];
+        int[][] epsilon = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            epsilon[state] = epsilonCounts[state] == 0 ? none : new int[epsilonCounts[state]];
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                int count = deltaCounts[state * symbols.length + symbol];
+                delta[state][symbol] = count == 0 ? none : new int[count];
+            }
+        }
+        Arrays.fill(epsilonCounts, 0);
+        Arrays.fill(deltaCounts, 0);
+        for (int edge = 0; edge < edges; edge++) {
+            int from = stateIds[parser.edgeFrom(edge)];
+            int to = stateIds[parser.edgeTo(edge)];
+            int symbol = parser.edgeSymbol(edge);
+            if (symbol == epsilonSymbol) {
+                epsilon[from][epsilonCounts[from]++] = to;
+            }
+            if (symbolIds[symbol] >= 0) {
+                int cell = from * symbols.length + symbolIds[symbol];
+                delta[from][symbolIds[symbol]][deltaCounts[cell]++] = to;
+            }
+        }
+        for (int state = 0; state < stateCount; state++) {
+            epsilon[state] = sortedUnique(epsilon[state]);
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                delta[state][symbol] = sortedUnique(delta[state][symbol]);
+            }
+        }
+        
+        long[] finalStates = new long[wordsFor(stateCount)];
+        BitSet finals = parser.finalStateIds();
+        for (int id = finals.nextSetBit(0); id >= 0; id = finals.nextSetBit(id + 1)) {
+            int state = stateIds[id];
+            finalStates[state >>> 6] |= 1L << state;
+        }
+        
+        int start = parser.startStateId() < 0 ? -1 : stateIds[parser.startStateId()];
+        return new IndexedNFA(stateNames, symbols, delta, epsilon, start, finalStates);
+    }
+    
+    private static int[] sortedUnique(int[] ids) {
+        if (ids.length < 2) {
+            return ids;
+        }
+        Arrays.sort(ids);
+        int size = 1;
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i] != ids[size - 1]) {
+                ids[size++] = ids[i];
+            }
+        }
+        return size == ids.length ? ids : Arrays.copyOf(ids, size);
+    }
+    
+    /**
+     * One NFA accepting the union of {@code nfas}: a new start state 0 with an
+     * epsilon edge to each of their start states, followed by the states of
+     * every NFA in turn, named {@code <index>:<name>}. Symbols are merged by
+     * name. State names are not in sorted order, so subsets of the union are
+     * not meant to be formatted.
+     */
+    static IndexedNFA union(List<IndexedNFA> nfas) {
+        Set<String> alphabet = new TreeSet<>();
+        int stateCount = 1;
+        for (int i = 0; i < nfas.size(); i++) {
+            IndexedNFA nfa = nfas.get(i);
+            if (nfa.startState < 0) {
+                throw new IllegalArgumentException("Pattern " + i + " has no start state");
+            }
+            alphabet.addAll(Arrays.asList(nfa.symbols));
+            stateCount += nfa.stateCount();
+        }
+        String[] symbols = alphabet.toArray(new String[0]);
+        
+        int[] none = new int[0];
+        String[] stateNames = new String[stateCount];
+        int[][][] delta = new int[stateCount][][];
+        int[][] epsilon = new int[stateCount][];
+        long[] finalStates = new long[wordsFor(stateCount)];
+        stateNames[0] = "start";
+        delta[0] = new int[symbols.length][];
+        Arrays.fill(delta[0], none);
+        epsilon[0] = new int[nfas.size()];
+        int offset = 1;
+        for (int i = 0; i < nfas.size(); i++) {
+            IndexedNFA nfa = nfas.get(i);
+            int[] symbolIds = new int[nfa.symbolCount()];
+            for (int symbol = 0; symbol < symbolIds.length; symbol++) {
+                symbolIds[symbol] = Arrays.binarySearch(symbols, nfa.symbols[symbol]);
+            }
+            epsilon[0][i] = offset + nfa.startState;
+            for (int state = 0; state < nfa.stateCount(); state++) {
+                int id = offset + state;
+                stateNames[id] = i + ":" + nfa.stateNames[state];
+                delta[id] = new int[symbols.length][];
+                Arrays.fill(delta[id], none);
+                for (int symbol = 0; symbol < symbolIds.length; symbol++) {
+                    delta[id][symbolIds[symbol]] = shifted(nfa.delta[state][symbol], offset, none);
+                }
+                epsilon[id] = shifted(nfa.epsilon[state], offset, none);
+                if ((nfa.finalStates[state >>> 6] & (1L << state)) != 0) {
+                    finalStates[id >>> 6] |= 1L << id;
+                }
+            }
+            offset += nfa.stateCount();
+        }
+        return new IndexedNFA(stateNames, symbols, delta, epsilon, 0, finalStates);
+    }
+    
+    private static int[] shifted(int[] ids, int offset, int[] none) {
+        if (ids.length == 0) {
+            return none;
+        }
+        int[] shifted = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            shifted[i] = ids[i] + offset;
+        }
+        return shifted;
+    }
+    
+    /** The same NFA over only the given symbols, in that order; target arrays are shared. */
+    IndexedNFA restrict(int[] symbolIds) {
+        String[] kept = new String[symbolIds.length];
+        for (int i = 0; i < symbolIds.length; i++) {
+            kept[i] = symbols[symbolIds[i]];
+        }
+        int[][][] keptDelta = new int[stateNames.length][symbolIds.length][];
+        for (int state = 0; state < stateNames.length; state++) {
+            for (int i = 0; i < symbolIds.length; i++) {
+                keptDelta[state][i] = delta[state][symbolIds[i]];
+            }
+        }
+        return new IndexedNFA(stateNames, kept, keptDelta, epsilon, startState, finalStates);
+    }
+    
+    int stateCount() {
+        return stateNames.length;
+    }
+    
+    int symbolCount() {
+        return symbols.length;
+    }
+    
+    /** States reachable from {@code set} on {@code symbol}, or null when there are none. */
+    long[] move(long[] set, int symbol) {
+        long[] result = null;
+        for (int w = 0; w < set.length; w++) {
+            long word = set[w];
+            while (word != 0) {
+                int state = (w << 6) + Long.numberOfTrailingZeros(word);
+                for (int target : delta[state][symbol]) {
+                    if (result == null) {
+                        result = new long[words];
+                    }
+                    result[target >>> 6] |= 1L << target;
+                }
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+    
+    boolean isFinal(StateSet set) {
+        return set.intersects(finalStates);
+    }
+    
+    String formatStateSet(StateSet set) {
+        StringBuilder name = new StringBuilder("{");
+        long[] bits = set.words;
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                int state = (w << 6) + Long.numberOfTrailingZeros(word);
+                if (name.length() > 1) {
+                    name.append(',');
+                }
+                name.append(stateNames[state]);
+                word &= word - 1;
+            }
+        }
+        return name.append('}').toString();
+    }
+}
\ No newline at end of file
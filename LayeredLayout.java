@@ -0,0 +1,108 @@
+import java.util.*;
+
+/**
+ * Layers by breadth-first distance from the start state, left to right.
+ * Within a layer states are ordered by the average position of their
+ * predecessors in the layer before (one barycentre sweep), which removes
+ * most crossings between consecutive layers. States the search never
+ * reaches go into one extra layer at the end.
+ */
+public class LayeredLayout implements LayoutEngine {
+    // Wider than tall, so transition labels fit between layers
+    private static final double LAYER_SPACING = 2;
+    
+    @Override
+    public void layout(int stateCount, int[] edgeFrom, int[] edgeTo, int startState,
+                       double[] x, double[] y, Progress progress) {
+        if (stateCount == 0) return;
+        int[][] successors = adjacency(stateCount, edgeFrom, edgeTo);
+        int[][] predecessors = adjacency(stateCount, edgeTo, edgeFrom);
+        
+        // Breadth-first search keeps states in discovery order, which seeds the ordering
+        int[] layer = new int[stateCount];
+        Arrays.fill(layer, -1);
+        int[] order = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        if (startState >= 0) {
+            layer[startState] = 0;
+            order[tail++] = startState;
+        }
+        int layerCount = tail == 0 ? 0 : 1;
+        while (head < tail) {
+            int state = order[head++];
+            for (int next : successors[state]) {
+                if (layer[next] == -1) {
+                    layer[next] = layer[state] + 1;
+                    layerCount = Math.max(layerCount, layer[next] + 1);
+                    order[tail++] = next;
+                }
+            }
+        }
+        if (tail < stateCount) {
+            for (int state = 0; state < stateCount; state++) {
+                if (layer[state] == -1) {
+                    layer[state] = layerCount;
+                    order[tail++] = state;
+                }
+            }
+            layerCount++;
+        }
+        
+        List<List<Integer>> layers = new ArrayList<>();
+        for (int i = 0; i < layerCount; i++) {
+            layers.add(new ArrayList<>());
+        }
+        for (int state : order) {
+            layers.get(layer[state]).add(state);
+        }
+        
+        double[] position = new double[stateCount];
+        double[] barycentre = new double[stateCount];
+        for (int i = 0; i < layerCount; i++) {
+            List<Integer> members = layers.get(i);
+            if (i > 0) {
+                for (int state : members) {
+                    double sum = 0;
+                    int count = 0;
+                    for (int previous : predecessors[state]) {
+                        if (layer[previous] == i - 1) {
+                            sum += position[previous];
+                            count++;
+                        }
+                    }
+                    barycentre[state] = count == 0 ? Double.MAX_VALUE : sum / count;
+                }
+                // Stable, so states without predecessors keep their discovery order at the end
+                members.sort((a, b) -> Double.compare(barycentre[a], barycentre[b]));
+            }
+            for (int index = 0; index < members.size(); index++) {
+                int state = members.get(index);
+                position[state] = index;
+                x[state] = i * LAYER_SPACING;
+                y[state] = index - (members.size() - 1) / 2.0;
+            }
+        }
+    }
+    
+    private static int[][] adjacency(int stateCount, int[] from, int[] to) {
+        int[] degree = new int[stateCount];
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] != to[i]) degree[from[i]]++;
+        }
+        int[][] adjacency = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            adjacency[state] = new int[degree[state]];
+            degree[state] = 0;
+        }
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] != to[i]) adjacency[from[i]][degree[from[i]]++] = to[i];
+        }
+        return adjacency;
+    }
+    
+    @Override
+    public String toString() {
+        return "Layered";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+/**
+ * Places the states of a graph for {@link AutomataVisualizer}. Positions are
+ * in layout units, chosen so that neighbouring states end up about one unit
+ * apart; the visualizer scales them to fit the panel.
+ *
+ * Engines may run off the event dispatch thread. Long-running ones report
+ * intermediate positions through {@link Progress} and stop early when it
+ * asks them to.
+ */
+public interface LayoutEngine {
+    interface Progress {
+        /** Receives the current positions, which keep changing after the call; returns false to stop. */
+        boolean update(double[] x, double[] y);
+    }
+    
+    /**
+     * Lays out states {@code 0..stateCount-1} joined by the directed edges
+     * {@code edgeFrom[i] -> edgeTo[i]}, writing the result into {@code x} and
+     * {@code y}. {@code startState} is -1 if there is none.
+     */
+    void layout(int stateCount, int[] edgeFrom, int[] edgeTo, int startState,
+                double[] x, double[] y, Progress progress);
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+import java.util.*;
+
+/**
+ * Matches input against an NFA by building DFA states on demand, in the
+ * style of RE2's lazy DFA. A subset state and each of its outgoing edges are
+ * only computed the first time the input reaches them. The state cache is
+ * bounded in bytes; when it fills up it is flushed, and when flushes come too
+ * close together the remaining input is matched by plain NFA simulation.
+ *
+ * Not thread-safe: use one instance per thread.
+ */
+public class LazyDFA {
+    public static final long DEFAULT_CACHE_BYTES = 8L << 20;
+    private static final int MIN_SYMBOLS_PER_STATE = 10;
+    private static final int MAX_THRASHING_FLUSHES = 3;
+    
+    private static final class CachedState {
+        final StateSet set;
+        final boolean accepting;
+        final CachedState[] next;
+        
+        CachedState(StateSet set, boolean accepting, int symbols) {
+            this.set = set;
+            this.accepting = accepting;
+            this.next = new CachedState[symbols];
+        }
+    }
+    
+    private final IndexedNFA nfa;
+    private final EpsilonClosureTable closures;
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private final int[] asciiSymbols = new int[128];
+    private final long bytesPerState;
+    private final int maxStates;
+    private final CachedState deadState;
+    private final Map<StateSet, CachedState> cache = new HashMap<>();
+    private CachedState startState;
+    // Symbol ids of the current input, reused so a match does not allocate
+    private int[] symbols = new int[64];
+    
+    private long cacheHits;
+    private long cacheMisses;
+    private long evictions;
+    private long flushes;
+    private long fallbacks;
+    
+    public LazyDFA(NFAParser nfaParser) {
+        this(nfaParser, DEFAULT_CACHE_BYTES);
+    }
+    
+    public LazyDFA(NFAParser nfaParser, long maxCacheBytes) {
+        if (nfaParser.getStartState() == null) {
+            throw new IllegalArgumentException("Start state is not defined");
+        }
+        this.nfa = IndexedNFA.from(nfaParser);
+        this.closures = new EpsilonClosureTable(nfa);
+        
+        Arrays.fill(asciiSymbols, -1);
+        for (int i = 0; i < nfa.symbolCount(); i++) {
+            String symbol = nfa.symbols[i];
+            symbolIds.put(symbol, i);
+            if (symbol.length() == 1 && symbol.charAt(0) < 128) {
+                asciiSymbols[symbol.charAt(0)] = i;
+            }
+        }
+        
+        // Rough per-state footprint: the bitset, the edge array and the map entry around them
+        this.bytesPerState = 16L + 8L * nfa.words + 16L + 4L * nfa.symbolCount() + 64L;
+        this.maxStates = (int) Math.max(2, Math.min(Integer.MAX_VALUE, maxCacheBytes / bytesPerState));
+        this.deadState = new CachedState(new StateSet(new long[nfa.words]), false, nfa.symbolCount());
+        Arrays.fill(deadState.next, deadState);
+        resetCache();
+    }
+    
+    public boolean matches(List<String> input) {
+        int length = input.size();
+        int[] symbols = symbolBuffer(length);
+        for (int i = 0; i < length; i++) {
+            Integer id = symbolIds.get(input.get(i));
+            if (id == null) return false;
+            symbols[i] = id;
+        }
+        return matches(symbols, length);
+    }
+    
+    /** Treats every character as one input symbol. */
+    public boolean matches(CharSequence input) {
+        int length = input.length();
+        int[] symbols = symbolBuffer(length);
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            int id = c < 128 ? asciiSymbols[c] : symbolIds.getOrDefault(String.valueOf(c), -1);
+            if (id < 0) return false;
+            symbols[i] = id;
+        }
+        return matches(symbols, length);
+    }
+    
+    private int[] symbolBuffer(int length) {
+        if (symbols.length < length) {
+            symbols = new int[Math.max(length, 2 * symbols.length)];
+        }
+        return symbols;
+    }
+    
+    private boolean matches(int[] symbols, int length) {
+        CachedState state = startState;
+        long symbolsAtLastFlush = 0;
+        int thrashingFlushes = 0;
+        
+        for (int i = 0; i < length; i++) {
+            int symbol = symbols[i];
+            CachedState next = state.next[symbol];
+            if (next != null) {
+                cacheHits++;
+                state = next;
+            } else {
+                cacheMisses++;
+                if (cache.size() >= maxStates) {
+                    // Too few symbols per cached state since the last flush means the cache is thrashing
+                    if (i - symbolsAtLastFlush >= (long) MIN_SYMBOLS_PER_STATE * maxStates) {
+                        thrashingFlushes = 0;
+                    } else if (++thrashingFlushes >= MAX_THRASHING_FLUSHES) {
+                        fallbacks++;
+                        return simulate(state.set, symbols, i, length);
+                    }
+                    symbolsAtLastFlush = i;
+                    StateSet current = state.set;
+                    resetCache();
+                    state = intern(current);
+                }
+                next = successor(state, symbol);
+                state.next[symbol] = next;
+                state = next;
+            }
+            if (state == deadState) return false;
+        }
+        return state.accepting;
+    }
+    
+    private CachedState successor(CachedState state, int symbol) {
+        long[] moved = nfa.move(state.set.words, symbol);
+        if (moved == null) {
+            return deadState;
+        }
+        return intern(new StateSet(closures.union(moved)));
+    }
+    
+    private CachedState intern(StateSet set) {
+        CachedState cached = cache.get(set);
+        if (cached == null) {
+            cached = new CachedState(set, nfa.isFinal(set), nfa.symbolCount());
+            cache.put(set, cached);
+        }
+        return cached;
+    }
+    
+    private void resetCache() {
+        if (startState != null) {
+            flushes++;
+            evictions += cache.size();
+        }
+        cache.clear();
+        StateSet start = new StateSet(closures.closure(nfa.startState));
+        startState = intern(start);
+    }
+    
+    private boolean simulate(StateSet from, int[] symbols, int offset, int length) {
+        long[] current = from.words;
+        for (int i = offset; i < length; i++) {
+            long[] moved = nfa.move(current, symbols[i]);
+            if (moved == null) return false;
+            current = closures.union(moved);
+        }
+        return new StateSet(current).intersects(nfa.finalStates);
+    }
+    
+    public void resetStatistics() {
+        cacheHits = 0;
+        cacheMisses = 0;
+        evictions = 0;
+        flushes = 0;
+        fallbacks = 0;
+    }
+    
+    // Cache statistics since construction or the last resetStatistics()
+    public long getCacheHits() { return cacheHits; }
+    public long getCacheMisses() { return cacheMisses; }
+    public long getEvictions() { return evictions; }
+    public long getFlushes() { return flushes; }
+    public long getFallbacks() { return fallbacks; }
+    public int getCachedStates() { return cache.size(); }
+    public long getCacheBytes() { return cache.size() * bytesPerState; }
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+import java.util.*;
+
+/**
+ * One DFA for many patterns at once. The pattern NFAs are joined under a
+ * new start state with an epsilon edge to each, converted once, and every
+ * DFA state records the ids of the patterns whose final states its subset
+ * holds, so a single pass over an input reports every pattern that accepts
+ * it in full. Pattern ids are positions in the list given to {@link #build}.
+ *
+ * Like {@link CompiledDFA}, every symbol must be a single character and the
+ * transitions live in one flat table of pre-multiplied row offsets, indexed
+ * here by symbol class (see {@link SymbolClasses}) rather than by symbol.
+ * Equal pattern sets are shared between states. Instances are immutable and
+ * can be shared across threads.
+ */
+public final class MultiPatternDFA {
+    private final int patternCount;
+    private final int[] charClass;
+    private final int stride;
+    private final int[] table;
+    // Index into patternSets by state; 0 is the empty set
+    private final int[] accepted;
+    private final BitSet[] patternSets;
+    private final int start;
+    private final int dead;
+    
+    private MultiPatternDFA(int patternCount, int[] charClass, int stride, int[] table, int[] accepted,
+                            BitSet[] patternSets, int start, int dead) {
+        this.patternCount = patternCount;
+        this.charClass = charClass;
+        this.stride = stride;
+        this.table = table;
+        this.accepted = accepted;
+        this.patternSets = patternSets;
+        this.start = start;
+        this.dead = dead;
+    }
+    
+    public static MultiPatternDFA build(List<NFASnapshot> patterns) {
+        return build(patterns, new ConversionMonitor());
+    }
+    
+    /** As {@link #build(List)}, reporting to {@code monitor}, which must not be shared with other calls. */
+    public static MultiPatternDFA build(List<NFASnapshot> patterns, ConversionMonitor monitor) {
+        List<IndexedNFA> nfas = new ArrayList<>(patterns.size());
+        for (NFASnapshot pattern : patterns) {
+            nfas.add(pattern.nfa);
+        }
+        IndexedNFA union = IndexedNFA.union(nfas);
+        int[] owner = new int[union.stateCount()];
+        owner[0] = -1;
+        for (int i = 0, next = 1; i < nfas.size(); i++) {
+            Arrays.fill(owner, next, next + nfas.get(i).stateCount(), i);
+            next += nfas.get(i).stateCount();
+        }
+        
+        SymbolClasses classes = SymbolClasses.of(union);
+        int maxChar = -1;
+        for (String symbol : classes.symbols) {
+            if (symbol.length() != 1) {
+                throw new IllegalArgumentException("Multi-pattern matcher needs single-character symbols, got: " + symbol);
+            }
+            maxChar = Math.max(maxChar, symbol.charAt(0));
+        }
+        // Column 0 is for characters outside the alphabet and always leads to the dead row
+        int[] charClass = new int[maxChar + 1];
+        for (int symbol = 0; symbol < classes.symbols.length; symbol++) {
+            charClass[classes.symbols[symbol].charAt(0)] = classes.classOf[symbol] + 1;
+        }
+        
+        SubsetConstruction construction = new SubsetConstruction(classes.reduced, monitor);
+        construction.run();
+        int stateCount = construction.stateCount();
+        int classCount = classes.classCount();
+        int stride = classCount + 1;
+        int deadRow = stateCount * stride;
+        int[] table = new int[(stateCount + 1) * stride];
+        Arrays.fill(table, deadRow);
+        int[] accepted = new int[stateCount + 1];
+        Map<BitSet, Integer> setIds = new HashMap<>();
+        List<BitSet> patternSets = new ArrayList<>();
+        BitSet empty = new BitSet();
+        setIds.put(empty, 0);
+        patternSets.add(empty);
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                int target = construction.transition(state, symbolClass);
+                if (target != SubsetConstruction.DEAD) {
+                    table[state * stride + symbolClass + 1] = target * stride;
+                }
+            }
+            BitSet matched = new BitSet(patterns.size());
+            long[] words = construction.subset(state).words;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w] & union.finalStates[w];
+                while (word != 0) {
+                    matched.set(owner[(w << 6) + Long.numberOfTrailingZeros(word)]);
+                    word &= word - 1;
+                }
+            }
+            Integer id = setIds.get(matched);
+            if (id == null) {
+                id = patternSets.size();
+                setIds.put(matched, id);
+                patternSets.add(matched);
+            }
+            accepted[state] = id;
+        }
+        return new MultiPatternDFA(patterns.size(), charClass, stride, table, accepted,
+            patternSets.toArray(new BitSet[0]), construction.startState() * stride, deadRow);
+    }
+    
+    public int patternCount() { return patternCount; }
+    // Live states, not counting the dead state
+    public int stateCount() { return table.length / stride - 1; }
+    
+    /** Ids of the patterns that accept the whole of {@code input}, as a new set. */
+    public BitSet matches(CharSequence input) {
+        return (BitSet) patternSets[accepted[run(input) / stride]].clone();
+    }
+    
+    public BitSet matches(byte[] input, int offset, int length) {
+        return (BitSet) patternSets[accepted[run(input, offset, length) / stride]].clone();
+    }
+    
+    public boolean matchesAny(CharSequence input) {
+        return accepted[run(input) / stride] != 0;
+    }
+    
+    /** Ids of the patterns accepting DFA state {@code state}, as a new set. */
+    public BitSet acceptedPatterns(int state) {
+        return (BitSet) patternSets[accepted[state]].clone();
+    }
+    
+    /** How many of {@code inputs} each pattern accepts, indexed by pattern id. */
+    public long[] countMatches(Collection<? extends CharSequence> inputs) {
+        long[] counts = new long[patternCount];
+        for (CharSequence input : inputs) {
+            BitSet matched = patternSets[accepted[run(input) / stride]];
+            for (int id = matched.nextSetBit(0); id >= 0; id = matched.nextSetBit(id + 1)) {
+                counts[id]++;
+            }
+        }
+        return counts;
+    }
+    
+    private int run(CharSequence input) {
+        int state = start;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            char c = input.charAt(i);
+            if (c >= charClass.length) return dead;
+            state = table[state + charClass[c]];
+            if (state == dead) return dead;
+        }
+        return state;
+    }
+    
+    private int run(byte[] input, int offset, int length) {
+        int state = start;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int c = input[i] & 0xFF;
+            if (c >= charClass.length) return dead;
+            state = table[state + charClass[c]];
+            if (state == dead) return dead;
+        }
+        return state;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,403 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Self-contained benchmark harness for parsing, conversion, output
+ * generation, rendering and matching over the {@link NFAGenerator} families.
+ * Each case is warmed up, then timed per operation; the report gives
+ * throughput, latency percentiles and bytes allocated per operation (taken
+ * from the HotSpot thread allocation counter, "n/a" on other JVMs).
+ *
+ * <pre>
+ * java NFABenchmark [--stages parse,convert,edit,output,render,repaint,match]
+ *                   [--families random,nth,chain,ranges] [--sizes 10,100,...]
+ *                   [--warmup N] [--iterations N] [--footprint] [--regex] [--patterns]
+ * </pre>
+ *
+ * Sizes are NFA state counts. The "nth" family is capped at n = 16 because its
+ * DFA has 2^n states. Every DFA state holds an n-bit subset, so the stages
+ * that convert are capped at 20,000 NFA states and rendering at 10,000;
+ * parsing runs at every size. "edit" times an incremental re-conversion
+ * after one transition is added or removed again. The "ranges" family, run
+ * only when asked for, labels edges with character ranges over a 75-symbol
+ * alphabet; it is capped at 300 states, past which random range NFAs either
+ * die out after a step or blow up. "render" times setDFA plus a full draw,
+ * "repaint" a draw that hits the visualizer's caches.
+ *
+ * {@code --footprint} skips the timings and instead compares the heap
+ * retained by a converted DFA held in {@link NFAToDFAConverter}'s string maps
+ * with the same DFA as a {@link DFASnapshot}, measured as the growth of the
+ * used heap across full collections.
+ *
+ * {@code --regex} compares the Glushkov and Thompson NFAs that
+ * {@link RegexCompiler} builds for the "nth" pattern {@code (a|b)*a(a|b)^(n-1)}
+ * and the "words" pattern, a search for n random words; it times compiling
+ * the pattern and converting the result.
+ *
+ * {@code --patterns} takes the sizes as pattern counts (1, 10, 100 and 1,000
+ * by default), each pattern a search for one random word. It compares one
+ * {@link NFAToDFAConverter} and {@link CompiledDFA} per pattern with a single
+ * {@link MultiPatternDFA}: the time to build them from the parsed NFAs and
+ * the time to find every pattern matching each of 4,096 32-byte lines.
+ *
+ * This harness times with {@code System.nanoTime} in one JVM and is meant
+ * for quick comparisons. For fork-isolated measurements, the same stages
+ * and families run under JMH from {@code src/jmh/java}:
+ * {@code mvn -Pjmh package && java -jar target/benchmarks.jar}.
+ */
+public class NFABenchmark {
+    private static final int MAX_NTH = 16;
+    private static final int MAX_RANGES = 300;
+    private static final int MAX_CONVERT_STATES = 20_000;
+    private static final int MAX_RENDER_STATES = 10_000;
+    private static final int MATCH_INPUT_BYTES = 1 << 20;
+    private static final int PATTERN_LINES = 4096;
+    private static final int PATTERN_LINE_LENGTH = 32;
+    
+    interface Operation {
+        Object run() throws Exception;
+    }
+    
+    // Keeps the object being measured by --footprint reachable
+    private static volatile Object retained;
+    
+    public static void main(String[] args) throws Exception {
+        List<String> stages = Arrays.asList("parse", "convert", "edit", "output", "render", "repaint", "match");
+        List<String> families = Arrays.asList("random", "nth", "chain");
+        int[] sizes = {10, 100, 1_000, 10_000, 100_000};
+        int warmup = 5;
+        int iterations = 20;
+        boolean footprint = false;
+        boolean regex = false;
+        boolean patterns = false;
+        boolean sizesGiven = false;
+        List<String> regexFamilies = Arrays.asList("nth", "words");
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--stages": stages = Arrays.asList(args[++i].split(",")); break;
+                case "--families": families = regexFamilies = Arrays.asList(args[++i].split(",")); break;
+                case "--sizes":
+                    sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    sizesGiven = true;
+                    break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--footprint": footprint = true; break;
+                case "--regex": regex = true; break;
+                case "--patterns": patterns = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        
+        if (footprint) {
+            reportFootprint(families, sizes);
+            return;
+        }
+        if (regex) {
+            reportRegex(regexFamilies, sizes, warmup, iterations);
+            return;
+        }
+        if (patterns) {
+            reportPatterns(sizesGiven ? sizes : new int[] {1, 10, 100, 1_000}, warmup, iterations);
+            return;
+        }
+        System.out.printf("%-8s %-7s %8s %12s %11s %11s %11s %14s%n",
+            "Stage", "Family", "Size", "Ops/s", "p50 (ms)", "p90 (ms)", "p99 (ms)", "Alloc/op (B)");
+        for (String family : families) {
+            for (int size : sizes) {
+                if (beyondCap(family, size)) continue;
+                String definition = generate(family, size);
+                for (String stage : stages) {
+                    if (!stage.equals("parse") && size > MAX_CONVERT_STATES) continue;
+                    if ((stage.equals("render") || stage.equals("repaint")) && size > MAX_RENDER_STATES) continue;
+                    Operation operation = prepare(stage, definition);
+                    report(stage, family, size, measure(operation, warmup, iterations));
+                }
+            }
+        }
+    }
+    
+    private static boolean beyondCap(String family, int size) {
+        return family.equals("nth") && size > MAX_NTH || family.equals("ranges") && size > MAX_RANGES;
+    }
+    
+    static String generate(String family, int size) {
+        switch (family) {
+            case "random": return NFAGenerator.random(size, 2, 1.5, 0.05, size);
+            case "nth": return NFAGenerator.nthFromEnd(size);
+            case "chain": return NFAGenerator.epsilonChain(size, 2, size);
+            case "ranges": return NFAGenerator.ranges(size, 3.0, 0.05, size);
+            default: throw new IllegalArgumentException("Unknown family: " + family);
+        }
+    }
+    
+    static Operation prepare(String stage, String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        switch (stage) {
+            case "parse":
+                return () -> {
+                    parser.parse(definition);
+                    return parser;
+                };
+            case "convert":
+                return () -> {
+                    converter.convert(parser);
+                    return converter;
+                };
+            case "edit": {
+                // Toggles one transition back to the start state, as a user editing the definition would
+                NFAParser edited = new NFAParser();
+                edited.parse(definition + "Transition: q1,a,q0\n");
+                converter.setIncremental(true);
+                converter.convert(parser);
+                boolean[] toggle = new boolean[1];
+                return () -> {
+                    toggle[0] = !toggle[0];
+                    converter.convert(toggle[0] ? edited : parser);
+                    return converter;
+                };
+            }
+            case "output":
+                converter.convert(parser);
+                return converter::generateDFAOutput;
+            case "render":
+            case "repaint": {
+                converter.convert(parser);
+                AutomataVisualizer visualizer = new AutomataVisualizer();
+                Runnable setDFA = () -> visualizer.setDFA(converter.getDFAStates(), converter.getDFATransitions(),
+                    converter.getDFAStartState(), converter.getDFAFinalStates(), parser.getAlphabet());
+                setDFA.run();
+                boolean cold = stage.equals("render");
+                BufferedImage image = new BufferedImage(1024, 768, BufferedImage.TYPE_INT_ARGB);
+                return () -> {
+                    if (cold) setDFA.run();
+                    Graphics2D g = image.createGraphics();
+                    try {
+                        visualizer.drawAutomata(g, image.getWidth(), image.getHeight());
+                    } finally {
+                        g.dispose();
+                    }
+                    return image;
+                };
+            }
+            case "match": {
+                converter.convert(parser);
+                CompiledDFA dfa = CompiledDFA.compile(converter, converter.getAlphabet());
+                byte[] input = NFAGenerator.input(MATCH_INPUT_BYTES, parser.getAlphabet().size(), 42);
+                return () -> dfa.matches(input);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown stage: " + stage);
+        }
+    }
+    
+    private static void reportRegex(List<String> families, int[] sizes, int warmup, int iterations) throws Exception {
+        System.out.printf("%-7s %6s %-9s %10s %10s %13s %13s %11s%n",
+            "Family", "Size", "NFA", "States", "Eps edges", "Compile (ms)", "Convert (ms)", "DFA states");
+        for (String family : families) {
+            for (int size : sizes) {
+                String pattern;
+                switch (family) {
+                    case "nth":
+                        if (size > MAX_NTH) continue;
+                        pattern = NFAGenerator.nthFromEndRegex(size);
+                        break;
+                    case "words":
+                        pattern = NFAGenerator.wordsRegex(size, 8, size);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown regex family: " + family);
+                }
+                for (RegexCompiler.Construction construction : RegexCompiler.Construction.values()) {
+                    NFAParser parser = new NFAParser();
+                    RegexCompiler.compile(pattern, construction, parser);
+                    if (parser.stateTable().size() > MAX_CONVERT_STATES) continue;
+                    int epsilon = parser.symbolTable().find(NFAParser.EPSILON);
+                    int epsilonEdges = 0;
+                    for (int edge = 0; edge < parser.edgeCount(); edge++) {
+                        if (parser.edgeSymbol(edge) == epsilon) epsilonEdges++;
+                    }
+                    long[] compile = measure(() -> {
+                        NFAParser compiled = new NFAParser();
+                        RegexCompiler.compile(pattern, construction, compiled);
+                        return compiled;
+                    }, warmup, iterations);
+                    NFAToDFAConverter converter = new NFAToDFAConverter();
+                    long[] convert = measure(() -> {
+                        converter.convert(parser);
+                        return converter;
+                    }, warmup, iterations);
+                    System.out.printf("%-7s %6d %-9s %10d %10d %13.3f %13.3f %11d%n", family, size,
+                        construction.name().toLowerCase(Locale.ROOT), parser.stateTable().size(), epsilonEdges,
+                        median(compile), median(convert), converter.getDFAStates().size());
+                }
+            }
+        }
+    }
+    
+    private static void reportPatterns(int[] counts, int warmup, int iterations) throws Exception {
+        byte[] text = NFAGenerator.input(PATTERN_LINES * PATTERN_LINE_LENGTH, 8, 42);
+        List<String> lines = new ArrayList<>(PATTERN_LINES);
+        for (int i = 0; i < PATTERN_LINES; i++) {
+            lines.add(new String(text, i * PATTERN_LINE_LENGTH, PATTERN_LINE_LENGTH, StandardCharsets.ISO_8859_1));
+        }
+        System.out.printf("%8s %10s %10s %14s %14s %13s %13s %9s%n", "Patterns", "NFA states", "DFA states",
+            "Separate (ms)", "Union (ms)", "Scan sep (ms)", "Scan uni (ms)", "Matches");
+        for (int count : counts) {
+            List<NFAParser> parsers = new ArrayList<>(count);
+            List<NFASnapshot> snapshots = new ArrayList<>(count);
+            int nfaStates = 0;
+            for (int i = 0; i < count; i++) {
+                NFAParser parser = new NFAParser();
+                RegexCompiler.compile(NFAGenerator.wordsRegex(1, 8, i), parser);
+                parsers.add(parser);
+                snapshots.add(NFASnapshot.of(parser));
+                nfaStates += parser.stateTable().size();
+            }
+            
+            // One converter and matcher per pattern, the way it had to be done before
+            List<CompiledDFA> separate = new ArrayList<>(count);
+            long[] buildSeparate = measure(() -> {
+                separate.clear();
+                for (NFAParser parser : parsers) {
+                    NFAToDFAConverter converter = new NFAToDFAConverter();
+                    converter.convert(parser);
+                    separate.add(CompiledDFA.compile(converter, converter.getAlphabet()));
+                }
+                return separate;
+            }, warmup, iterations);
+            MultiPatternDFA[] union = new MultiPatternDFA[1];
+            long[] buildUnion = measure(() -> union[0] = MultiPatternDFA.build(snapshots), warmup, iterations);
+            
+            long[] separateMatches = new long[1];
+            long[] scanSeparate = measure(() -> {
+                long matches = 0;
+                for (CompiledDFA dfa : separate) {
+                    matches += dfa.countMatches(lines);
+                }
+                separateMatches[0] = matches;
+                return separateMatches;
+            }, warmup, iterations);
+            long[] unionMatches = new long[1];
+            long[] scanUnion = measure(() -> {
+                long matches = 0;
+                for (long patternMatches : union[0].countMatches(lines)) {
+                    matches += patternMatches;
+                }
+                unionMatches[0] = matches;
+                return unionMatches;
+            }, warmup, iterations);
+            if (separateMatches[0] != unionMatches[0]) {
+                throw new IllegalStateException("Union found " + unionMatches[0] + " matches, separate DFAs "
+                    + separateMatches[0]);
+            }
+            System.out.printf("%8d %10d %10d %14.3f %14.3f %13.3f %13.3f %9d%n", count, nfaStates,
+                union[0].stateCount(), median(buildSeparate), median(buildUnion), median(scanSeparate),
+                median(scanUnion), unionMatches[0]);
+        }
+    }
+    
+    private static double median(long[] samples) {
+        long[] latencies = Arrays.copyOf(samples, samples.length - 1);
+        Arrays.sort(latencies);
+        return percentile(latencies, 0.50);
+    }
+    
+    private static void reportFootprint(List<String> families, int[] sizes) throws Exception {
+        System.out.printf("%-7s %8s %11s %14s %14s %7s%n", "Family", "Size", "DFA states", "Maps (KB)", "Snapshot (KB)", "Ratio");
+        for (String family : families) {
+            for (int size : sizes) {
+                if (beyondCap(family, size) || size > MAX_CONVERT_STATES) continue;
+                NFAParser parser = new NFAParser();
+                parser.parse(generate(family, size));
+                NFASnapshot nfa = NFASnapshot.of(parser);
+                DFASnapshot dfa = DFASnapshot.convert(nfa);
+                // Small DFAs are lost in GC noise, so hold enough copies to measure and divide
+                int copies = Math.max(1, 65536 / Math.max(1, dfa.stateCount() * Math.max(1, dfa.symbolCount())));
+                long maps = retainedBytes(copies, () -> {
+                    NFAToDFAConverter converter = new NFAToDFAConverter();
+                    converter.convert(parser);
+                    return converter;
+                });
+                long snapshot = retainedBytes(copies, () -> DFASnapshot.convert(nfa));
+                System.out.printf("%-7s %8d %11d %14.1f %14.1f %6.1fx%n", family, size, dfa.stateCount(),
+                    maps / 1024.0, snapshot / 1024.0, (double) maps / Math.max(1, snapshot));
+            }
+        }
+    }
+    
+    private static long retainedBytes(int copies, Operation build) throws Exception {
+        Object[] held = new Object[copies];
+        long before = usedHeap();
+        for (int i = 0; i < copies; i++) {
+            held[i] = build.run();
+        }
+        retained = held;
+        long after = usedHeap();
+        retained = null;
+        return (after - before) / copies;
+    }
+    
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+    
+    private static long[] measure(Operation operation, int warmup, int iterations) throws Exception {
+        Object sink = null;
+        for (int i = 0; i < warmup; i++) {
+            sink = operation.run();
+        }
+        long[] result = new long[iterations + 1];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            sink = operation.run();
+            result[i] = System.nanoTime() - start;
+        }
+        long allocatedAfter = allocatedBytes();
+        result[iterations] = allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / iterations;
+        if (sink == null) {
+            throw new IllegalStateException("Benchmark produced no result");
+        }
+        return result;
+    }
+    
+    private static void report(String stage, String family, int size, long[] samples) {
+        int iterations = samples.length - 1;
+        long allocation = samples[iterations];
+        long[] latencies = Arrays.copyOf(samples, iterations);
+        Arrays.sort(latencies);
+        long total = 0;
+        for (long latency : latencies) total += latency;
+        
+        System.out.printf("%-8s %-7s %8d %12.1f %11.3f %11.3f %11.3f %14s%n",
+            stage, family, size, iterations * 1e9 / total,
+            percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+            allocation < 0 ? "n/a" : String.valueOf(allocation));
+    }
+    
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+    
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/**
+ * What changed between two {@link IndexedNFA}s parsed from successive edits
+ * of one definition. States and symbols are matched by name; since both
+ * sides number them in sorted name order, the mapping between shared states
+ * preserves order. Both bitsets below are in the old NFA's ids:
+ * {@link #dirty} marks states whose labelled transitions on shared symbols
+ * changed, and {@link #tainted} marks states whose epsilon closure may have
+ * changed. States that no longer exist are in both.
+ */
+final class NFADiff {
+    final long[] dirty;
+    final long[] tainted;
+    private final IndexedNFA before;
+    private final IndexedNFA after;
+    private final int[] oldToNew;
+    private final int[] newToOld;
+    private final int[] oldSymbols;
+    private final boolean identity;
+    private final boolean sameFinalStates;
+    
+    NFADiff(IndexedNFA before, EpsilonClosureTable beforeClosures, IndexedNFA after, EpsilonClosureTable afterClosures) {
+        this.before = before;
+        this.after = after;
+        this.identity = Arrays.equals(before.stateNames, after.stateNames);
+        this.oldToNew = new int[before.stateCount()];
+        this.newToOld = new int[after.stateCount()];
+        match(before.stateNames, after.stateNames, oldToNew, newToOld);
+        this.oldSymbols = new int[after.symbolCount()];
+        match(before.symbols, after.symbols, new int[before.symbolCount()], oldSymbols);
+        
+        boolean sameFinals = true;
+        for (int old = 0; old < before.stateCount() && sameFinals; old++) {
+            int state = oldToNew[old];
+            boolean wasFinal = (before.finalStates[old >>> 6] & (1L << old)) != 0;
+            sameFinals = wasFinal == (state >= 0 && (after.finalStates[state >>> 6] & (1L << state)) != 0);
+        }
+        for (int state = 0; state < after.stateCount() && sameFinals; state++) {
+            sameFinals = newToOld[state] >= 0 || (after.finalStates[state >>> 6] & (1L << state)) == 0;
+        }
+        this.sameFinalStates = sameFinals;
+        
+        dirty = new long[before.words];
+        tainted = new long[before.words];
+        long[] epsilonChangedOld = new long[before.words];
+        long[] epsilonChangedNew = new long[after.words];
+        for (int state = 0; state < after.stateCount(); state++) {
+            int old = newToOld[state];
+            if (old < 0) {
+                epsilonChangedNew[state >>> 6] |= 1L << state;
+                continue;
+            }
+            if (!sameTargets(after.epsilon[state], before.epsilon[old])) {
+                epsilonChangedNew[state >>> 6] |= 1L << state;
+                epsilonChangedOld[old >>> 6] |= 1L << old;
+            }
+            for (int symbol = 0; symbol < after.symbolCount(); symbol++) {
+                if (oldSymbols[symbol] >= 0 && !sameTargets(after.delta[state][symbol], before.delta[old][oldSymbols[symbol]])) {
+                    dirty[old >>> 6] |= 1L << old;
+                    break;
+                }
+            }
+        }
+        
+        // A closure can only change if it passes through a changed epsilon list before or after the edit
+        for (int old = 0; old < before.stateCount(); old++) {
+            int state = oldToNew[old];
+            if (state < 0) {
+                dirty[old >>> 6] |= 1L << old;
+                tainted[old >>> 6] |= 1L << old;
+            } else if (beforeClosures.closureIntersects(old, epsilonChangedOld)
+                    || afterClosures.closureIntersects(state, epsilonChangedNew)) {
+                tainted[old >>> 6] |= 1L << old;
+            }
+        }
+    }
+    
+    private static void match(String[] before, String[] after, int[] oldToNew, int[] newToOld) {
+        Arrays.fill(oldToNew, -1);
+        Arrays.fill(newToOld, -1);
+        int i = 0;
+        int j = 0;
+        while (i < before.length && j < after.length) {
+            int order = before[i].compareTo(after[j]);
+            if (order == 0) {
+                oldToNew[i] = j;
+                newToOld[j] = i;
+                i++;
+                j++;
+            } else if (order < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+    }
+    
+    private boolean sameTargets(int[] targets, int[] oldTargets) {
+        if (targets.length != oldTargets.length) return false;
+        for (int i = 0; i < targets.length; i++) {
+            if (newToOld[targets[i]] != oldTargets[i]) return false;
+        }
+        return true;
+    }
+    
+    /** Whether every state and symbol kept its id, so old and new bitsets and rows line up. */
+    boolean sameNumbering() {
+        return identity && Arrays.equals(before.symbols, after.symbols);
+    }
+    
+    /** Whether the same states, by name, are final before and after. */
+    boolean sameFinalStates() {
+        return sameFinalStates;
+    }
+    
+    /** Indices of the words in which {@link #dirty} or {@link #tainted} has a bit set. */
+    int[] changedWords() {
+        int count = 0;
+        int[] result = new int[dirty.length];
+        for (int w = 0; w < dirty.length; w++) {
+            if ((dirty[w] | tainted[w]) != 0) {
+                result[count++] = w;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+    
+    /** The old id of {@code symbol}, or -1 if the edit introduced it. */
+    int oldSymbol(int symbol) {
+        return oldSymbols[symbol];
+    }
+    
+    /** {@code set} renumbered into the new NFA; every member must still exist. */
+    StateSet toNew(StateSet set) {
+        if (identity) return set;
+        return new StateSet(remap(set.words, oldToNew, after.words));
+    }
+    
+    /** {@code set} renumbered into the old NFA, or null if it has a state the edit added. */
+    StateSet toOld(StateSet set) {
+        if (identity) return set;
+        long[] words = remap(set.words, newToOld, before.words);
+        return words == null ? null : new StateSet(words);
+    }
+    
+    private static long[] remap(long[] set, int[] ids, int words) {
+        long[] result = new long[words];
+        for (int w = 0; w < set.length; w++) {
+            long word = set[w];
+            while (word != 0) {
+                int id = ids[(w << 6) + Long.numberOfTrailingZeros(word)];
+                if (id < 0) return null;
+                result[id >>> 6] |= 1L << id;
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,182 @@
+import java.util.*;
+
+/**
+ * Seeded generators for synthetic NFA definitions in the text format read by
+ * {@link NFAParser}. The same arguments always produce the same definition.
+ */
+public final class NFAGenerator {
+    private static final String[] RANGE_BLOCKS = {"0-9", ":-@", "A-M", "N-Z", "[-`", "a-m", "n-z"};
+    
+    private NFAGenerator() {
+    }
+    
+    /**
+     * Random NFA over {@code symbols} letters (at most 25) where every state gets on average
+     * {@code edgesPerState} labelled edges and, with probability
+     * {@code epsilonRate}, one epsilon edge. Roughly a tenth of the states are final.
+     */
+    public static String random(int states, int symbols, double edgesPerState, double epsilonRate, long seed) {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder();
+        appendStates(out, states);
+        appendAlphabet(out, symbols);
+        int edges = (int) Math.round(states * edgesPerState);
+        for (int i = 0; i < edges; i++) {
+            appendTransition(out, random.nextInt(states), symbol(random.nextInt(symbols)), random.nextInt(states));
+        }
+        for (int state = 0; state < states; state++) {
+            if (random.nextDouble() < epsilonRate) {
+                appendTransition(out, state, "e", random.nextInt(states));
+            }
+        }
+        out.append("Start: q0\n");
+        out.append("Final: ");
+        boolean first = true;
+        for (int state = 0; state < states; state++) {
+            if (state == states - 1 || random.nextInt(10) == 0) {
+                out.append(first ? "" : ",").append('q').append(state);
+                first = false;
+            }
+        }
+        return out.append('\n').toString();
+    }
+    
+    /**
+     * The classic "n-th symbol from the end is a" language over {a, b}: n + 1
+     * NFA states whose minimal DFA needs 2^n states.
+     */
+    public static String nthFromEnd(int n) {
+        StringBuilder out = new StringBuilder();
+        appendStates(out, n + 1);
+        appendAlphabet(out, 2);
+        appendTransition(out, 0, "a", 0);
+        appendTransition(out, 0, "b", 0);
+        appendTransition(out, 0, "a", 1);
+        for (int state = 1; state < n; state++) {
+            appendTransition(out, state, "a", state + 1);
+            appendTransition(out, state, "b", state + 1);
+        }
+        return out.append("Start: q0\nFinal: q").append(n).append('\n').toString();
+    }
+    
+    /**
+     * A chain where every state has an epsilon edge to the next one and a
+     * labelled edge two ahead, plus epsilon back-edges every ten states that
+     * close cycles. Closures are long and heavily shared.
+     */
+    public static String epsilonChain(int states, int symbols, long seed) {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder();
+        appendStates(out, states);
+        appendAlphabet(out, symbols);
+        for (int state = 0; state + 1 < states; state++) {
+            appendTransition(out, state, "e", state + 1);
+            if (state + 2 < states) {
+                appendTransition(out, state, symbol(random.nextInt(symbols)), state + 2);
+            }
+            if (state % 10 == 9) {
+                appendTransition(out, state, "e", state - 1 - random.nextInt(9));
+            }
+        }
+        return out.append("Start: q0\nFinal: q").append(states - 1).append('\n').toString();
+    }
+    
+    /**
+     * Random NFA over the 75 characters {@code 0-z}, declared as one range,
+     * whose labelled edges each cover one of a few character blocks (digits,
+     * lower and upper case halves, punctuation), as in a lexer. Edges,
+     * epsilon edges and final states are drawn as in {@link #random}.
+     */
+    public static String ranges(int states, double edgesPerState, double epsilonRate, long seed) {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder();
+        appendStates(out, states);
+        out.append("Alphabet: 0-z\n");
+        int edges = (int) Math.round(states * edgesPerState);
+        for (int i = 0; i < edges; i++) {
+            appendTransition(out, random.nextInt(states), RANGE_BLOCKS[random.nextInt(RANGE_BLOCKS.length)],
+                random.nextInt(states));
+        }
+        for (int state = 0; state < states; state++) {
+            if (random.nextDouble() < epsilonRate) {
+                appendTransition(out, state, "e", random.nextInt(states));
+            }
+        }
+        out.append("Start: q0\n");
+        out.append("Final: ");
+        boolean first = true;
+        for (int state = 0; state < states; state++) {
+            if (state == states - 1 || random.nextInt(10) == 0) {
+                out.append(first ? "" : ",").append('q').append(state);
+                first = false;
+            }
+        }
+        return out.append('\n').toString();
+    }
+    
+    /** {@link #nthFromEnd} as a pattern for {@link RegexCompiler}: {@code (a|b)*a(a|b)...(a|b)}. */
+    public static String nthFromEndRegex(int n) {
+        StringBuilder out = new StringBuilder("(a|b)*a");
+        for (int i = 1; i < n; i++) {
+            out.append("(a|b)");
+        }
+        return out.toString();
+    }
+    
+    /**
+     * A search for any of {@code words} random words of 3 to 8 letters over
+     * {@code symbols} letters: {@code (a|b|...)*(w1|w2|...)}.
+     */
+    public static String wordsRegex(int words, int symbols, long seed) {
+        Random random = new Random(seed);
+        StringBuilder out = new StringBuilder("(");
+        for (int i = 0; i < symbols; i++) {
+            out.append(i == 0 ? "" : "|").append(symbol(i));
+        }
+        out.append(")*(");
+        for (int word = 0; word < words; word++) {
+            out.append(word == 0 ? "" : "|");
+            int length = 3 + random.nextInt(6);
+            for (int i = 0; i < length; i++) {
+                out.append(symbol(random.nextInt(symbols)));
+            }
+        }
+        return out.append(')').toString();
+    }
+    
+    /** Random input over the first {@code symbols} letters, for matching benchmarks. */
+    public static byte[] input(int length, int symbols, long seed) {
+        Random random = new Random(seed);
+        byte[] input = new byte[length];
+        for (int i = 0; i < length; i++) {
+            input[i] = (byte) symbol(random.nextInt(symbols)).charAt(0);
+        }
+        return input;
+    }
+    
+    private static String symbol(int index) {
+        // Skip 'e', which the parser reads as epsilon
+        char c = (char) ('a' + index);
+        return String.valueOf(c >= 'e' ? (char) (c + 1) : c);
+    }
+    
+    private static void appendStates(StringBuilder out, int states) {
+        out.append("States: ");
+        for (int state = 0; state < states; state++) {
+            out.append(state == 0 ? "" : ",").append('q').append(state);
+        }
+        out.append('\n');
+    }
+    
+    private static void appendAlphabet(StringBuilder out, int symbols) {
+        out.append("Alphabet: ");
+        for (int i = 0; i < symbols; i++) {
+            out.append(i == 0 ? "" : ",").append(symbol(i));
+        }
+        out.append('\n');
+    }
+    
+    private static void appendTransition(StringBuilder out, int from, String symbol, int to) {
+        out.append("Transition: q").append(from).append(',').append(symbol).append(",q").append(to).append('\n');
+    }
+}
\ No newline at end of file
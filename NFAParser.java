@@ -1,82 +1,345 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 public class NFAParser {
-    private Map<String, Set<String>> nfaTransitions = new HashMap<>();
-    private Set<String> states = new HashSet<>();
-    private Set<String> alphabet = new HashSet<>();
-    private String startState;
-    private Set<String> finalStates = new HashSet<>();
+    static final String EPSILON = "ε";
+    
+    // Parsed model: names interned to ids, edges kept as parallel int arrays
+    private final SymbolTable stateTable = new SymbolTable();
+    private final SymbolTable symbolTable = new SymbolTable();
+    private final BitSet declaredStates = new BitSet();
+    private final BitSet declaredSymbols = new BitSet();
+    private final BitSet finalStateIds = new BitSet();
+    private int[] edgeFrom = new int[64];
+    private int[] edgeSymbol = new int[64];
+    private int[] edgeTo = new int[64];
+    private int edgeCount;
+    private int startStateId = -1;
+    // Line of the Regex: line, or 0; a pattern defines the whole NFA, so nothing else may add states
+    private int regexLine;
+    
+    // String views, built on first use
+    private Map<String, Set<String>> nfaTransitions;
+    private Set<String> states;
+    private Set<String> alphabet;
+    private Set<String> finalStates;
+    
+    private ConversionMetrics metrics;
+    
+    // Times and counts every parse into metrics; null turns this off
+    public void setMetrics(ConversionMetrics metrics) { this.metrics = metrics; }
+    public ConversionMetrics getMetrics() { return metrics; }
     
     public void parse(String input) {
+        try {
+            parse(new StringReader(input));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    public void parse(InputStream input) throws IOException {
+        parse(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+    
+    public void parse(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            parse(input);
+        }
+    }
+    
+    /**
+     * Parses line by line from a fixed buffer, so the whole definition is never
+     * held in memory. Only lines are buffered, and a token becomes a String
+     * only the first time its name is interned.
+     */
+    public void parse(Reader reader) throws IOException {
+        ConversionMetrics.Run run = metrics == null ? null : metrics.start(false);
         clear();
-        String[] lines = input.split("\n");
+        char[] buffer = new char[8192];
+        int filled = 0;
+        int scanned = 0;
+        int lineNumber = 0;
+        boolean eof = false;
         
-        for (String line : lines) {
-            line = line.trim();
-            if (line.startsWith("States:")) {
-                parseStates(line.substring(7));
-            } else if (line.startsWith("Alphabet:")) {
-                parseAlphabet(line.substring(9));
-            } else if (line.startsWith("Transition:")) {
-                parseTransition(line.substring(11));
-            } else if (line.startsWith("Start:")) {
-                startState = line.substring(6).trim();
-            } else if (line.startsWith("Final:")) {
-                parseFinalStates(line.substring(6));
+        while (true) {
+            int lineStart = 0;
+            for (int i = scanned; i < filled; i++) {
+                if (buffer[i] == '\n') {
+                    parseLine(buffer, lineStart, i, ++lineNumber);
+                    lineStart = i + 1;
+                }
+            }
+            if (eof) {
+                if (lineStart < filled) {
+                    parseLine(buffer, lineStart, filled, ++lineNumber);
+                }
+                break;
+            }
+            
+            int rest = filled - lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, rest);
+            filled = rest;
+            scanned = rest;
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = reader.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                eof = true;
+            } else {
+                filled += read;
             }
         }
+        
+        if (run != null) {
+            run.end(ConversionMetrics.Phase.PARSE);
+            run.lines = lineNumber;
+            run.nfaStates = stateTable.size();
+            run.symbols = symbolTable.size();
+            run.nfaTransitions = edgeCount;
+            metrics.record(run);
+        }
     }
     
-    private void clear() {
-        nfaTransitions.clear();
-        states.clear();
-        alphabet.clear();
-        finalStates.clear();
-        startState = null;
+    private void parseLine(char[] line, int start, int end, int lineNumber) {
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;
+        
+        if (startsWith(line, start, end, "States:")) {
+            checkNoRegex(lineNumber);
+            parseStates(line, start + 7, end);
+        } else if (startsWith(line, start, end, "Alphabet:")) {
+            parseAlphabet(line, start + 9, end);
+        } else if (startsWith(line, start, end, "Transition:")) {
+            checkNoRegex(lineNumber);
+            parseTransition(line, start + 11, end, lineNumber);
+        } else if (startsWith(line, start, end, "Start:")) {
+            checkNoRegex(lineNumber);
+            startStateId = internState(line, start + 6, end);
+        } else if (startsWith(line, start, end, "Final:")) {
+            checkNoRegex(lineNumber);
+            parseFinalStates(line, start + 6, end);
+        } else if (startsWith(line, start, end, "Regex:")) {
+            // States q0..qn, start state and final states all come from the pattern
+            if (regexLine != 0) {
+                throw new IllegalArgumentException("Only one Regex line is allowed, found another at line " + lineNumber
+                    + " after line " + regexLine);
+            }
+            if (stateTable.size() > 0) {
+                throw new IllegalArgumentException("Regex line cannot be combined with states or transitions at line "
+                    + lineNumber);
+            }
+            regexLine = lineNumber;
+            RegexCompiler.append(new String(line, start + 6, end - start - 6), this);
+        }
     }
     
-    private void parseStates(String statesStr) {
-        String[] statesList = statesStr.split(",");
-        for (String state : statesList) {
-            states.add(state.trim());
+    private void checkNoRegex(int lineNumber) {
+        if (regexLine != 0) {
+            throw new IllegalArgumentException("Regex line cannot be combined with states or transitions at line "
+                + lineNumber + " (Regex at line " + regexLine + ")");
         }
     }
     
-    private void parseAlphabet(String alphabetStr) {
-        String[] alphabetList = alphabetStr.split(",");
-        for (String symbol : alphabetList) {
-            alphabet.add(symbol.trim());
+    void clear() {
+        stateTable.clear();
+        symbolTable.clear();
+        declaredStates.clear();
+        declaredSymbols.clear();
+        finalStateIds.clear();
+        edgeCount = 0;
+        startStateId = -1;
+        regexLine = 0;
+        nfaTransitions = null;
+        states = null;
+        alphabet = null;
+        finalStates = null;
+    }
+    
+    private void parseStates(char[] line, int start, int end) {
+        int listEnd = listEnd(line, start, end);
+        for (int from = start; from <= listEnd; ) {
+            int comma = indexOf(line, ',', from, listEnd);
+            declaredStates.set(internState(line, from, comma));
+            from = comma + 1;
         }
     }
     
-    private void parseTransition(String transitionStr) {
-        String[] parts = transitionStr.split(",");
-        if (parts.length != 3) {
-            throw new IllegalArgumentException("Invalid transition format: " + transitionStr);
+    private void parseAlphabet(char[] line, int start, int end) {
+        int listEnd = listEnd(line, start, end);
+        for (int from = start; from <= listEnd; ) {
+            int comma = indexOf(line, ',', from, listEnd);
+            int range = rangeStart(line, from, comma);
+            if (range >= 0) {
+                for (int c = line[range]; c <= line[range + 2]; c++) {
+                    declaredSymbols.set(symbolTable.intern(String.valueOf((char) c)));
+                }
+            } else {
+                declaredSymbols.set(internSymbol(line, from, comma));
+            }
+            from = comma + 1;
         }
-        
-        String fromState = parts[0].trim();
-        String symbol = parts[1].trim();
-        String toState = parts[2].trim();
-        
-        if (symbol.equals("e") || symbol.equals("ε")) {
-            symbol = "ε";
+    }
+    
+    private void parseTransition(char[] line, int start, int end, int lineNumber) {
+        int listEnd = listEnd(line, start, end);
+        int first = indexOf(line, ',', start, listEnd);
+        int second = first < listEnd ? indexOf(line, ',', first + 1, listEnd) : listEnd;
+        if (listEnd < start || second >= listEnd || indexOf(line, ',', second + 1, listEnd) < listEnd) {
+            throw new IllegalArgumentException("Invalid transition format at line " + lineNumber + ": "
+                + new String(line, start, end - start));
         }
         
-        nfaTransitions.computeIfAbsent(fromState + "," + symbol, k -> new HashSet<>()).add(toState);
+        int fromState = internState(line, start, first);
+        int toState = internState(line, second + 1, listEnd);
+        int range = rangeStart(line, first + 1, second);
+        if (range >= 0) {
+            for (int c = line[range]; c <= line[range + 2]; c++) {
+                addEdge(fromState, symbolTable.intern(String.valueOf((char) c)), toState);
+            }
+            return;
+        }
+        int symbol = isEpsilon(line, first + 1, second)
+            ? symbolTable.intern(EPSILON) : internSymbol(line, first + 1, second);
+        addEdge(fromState, symbol, toState);
+    }
+    
+    private void parseFinalStates(char[] line, int start, int end) {
+        int listEnd = listEnd(line, start, end);
+        for (int from = start; from <= listEnd; ) {
+            int comma = indexOf(line, ',', from, listEnd);
+            finalStateIds.set(internState(line, from, comma));
+            from = comma + 1;
+        }
+    }
+    
+    void addEdge(int from, int symbol, int to) {
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeSymbol = Arrays.copyOf(edgeSymbol, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeSymbol[edgeCount] = symbol;
+        edgeTo[edgeCount] = to;
+        edgeCount++;
+    }
+    
+    /**
+     * End of a comma-separated list once trailing empty entries are dropped,
+     * mirroring {@code String.split(",")}; before {@code start} when nothing is left.
+     */
+    private static int listEnd(char[] line, int start, int end) {
+        if (indexOf(line, ',', start, end) == end) {
+            return end;
+        }
+        int listEnd = end;
+        while (listEnd > start && line[listEnd - 1] == ',') {
+            listEnd--;
+        }
+        return listEnd == start ? start - 1 : listEnd;
     }
     
-    private void parseFinalStates(String finalStatesStr) {
-        String[] finalStatesList = finalStatesStr.split(",");
-        for (String state : finalStatesList) {
-            finalStates.add(state.trim());
+    private static int indexOf(char[] line, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (line[i] == c) return i;
         }
+        return end;
+    }
+    
+    private int internState(char[] line, int start, int end) {
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;
+        return stateTable.intern(line, start, end - start);
+    }
+    
+    private int internSymbol(char[] line, int start, int end) {
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;
+        return symbolTable.intern(line, start, end - start);
+    }
+    
+    /**
+     * Where a symbol range like {@code a-z} starts: two single characters
+     * around a dash, the first below the second. Anything else, such as
+     * {@code -} or {@code z-a}, is a plain symbol name and gives -1. Every
+     * character of a range is a literal symbol, {@code e} included.
+     */
+    private static int rangeStart(char[] line, int start, int end) {
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;
+        return end - start == 3 && line[start + 1] == '-' && line[start] < line[start + 2] ? start : -1;
     }
     
+    private static boolean isEpsilon(char[] line, int start, int end) {
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;
+        return end - start == 1 && (line[start] == 'e' || line[start] == 'ε');
+    }
+    
+    private static boolean startsWith(char[] line, int start, int end, String prefix) {
+        if (end - start < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[start + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+    
+    private Set<String> names(SymbolTable table, BitSet ids) {
+        Set<String> names = new HashSet<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            names.add(table.name(id));
+        }
+        return names;
+    }
+    
+    // Int-level building for models that do not come from text, e.g. decoded from disk
+    int addState(String name) { return stateTable.intern(name); }
+    int addSymbol(String name) { return symbolTable.intern(name); }
+    void declareState(int state) { declaredStates.set(state); }
+    void declareSymbol(int symbol) { declaredSymbols.set(symbol); }
+    void markFinal(int state) { finalStateIds.set(state); }
+    void setStartStateId(int state) { startStateId = state; }
+    
+    // Int-level access for IndexedNFA, which never needs the string views
+    BitSet declaredStates() { return declaredStates; }
+    SymbolTable stateTable() { return stateTable; }
+    SymbolTable symbolTable() { return symbolTable; }
+    BitSet declaredSymbols() { return declaredSymbols; }
+    BitSet finalStateIds() { return finalStateIds; }
+    int startStateId() { return startStateId; }
+    int edgeCount() { return edgeCount; }
+    int edgeFrom(int edge) { return edgeFrom[edge]; }
+    int edgeSymbol(int edge) { return edgeSymbol[edge]; }
+    int edgeTo(int edge) { return edgeTo[edge]; }
+    
     // Getters for the parsed data
-    public Map<String, Set<String>> getNFATransitions() { return nfaTransitions; }
-    public Set<String> getStates() { return states; }
-    public Set<String> getAlphabet() { return alphabet; }
-    public String getStartState() { return startState; }
-    public Set<String> getFinalStates() { return finalStates; }
+    public Map<String, Set<String>> getNFATransitions() {
+        if (nfaTransitions == null) {
+            nfaTransitions = new HashMap<>();
+            for (int edge = 0; edge < edgeCount; edge++) {
+                String key = stateTable.name(edgeFrom[edge]) + "," + symbolTable.name(edgeSymbol[edge]);
+                nfaTransitions.computeIfAbsent(key, k -> new HashSet<>()).add(stateTable.name(edgeTo[edge]));
+            }
+        }
+        return nfaTransitions;
+    }
+    public Set<String> getStates() {
+        if (states == null) states = names(stateTable, declaredStates);
+        return states;
+    }
+    public Set<String> getAlphabet() {
+        if (alphabet == null) alphabet = names(symbolTable, declaredSymbols);
+        return alphabet;
+    }
+    public String getStartState() { return startStateId < 0 ? null : stateTable.name(startStateId); }
+    public Set<String> getFinalStates() {
+        if (finalStates == null) finalStates = names(stateTable, finalStateIds);
+        return finalStates;
+    }
 }
\ No newline at end of file
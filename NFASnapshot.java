@@ -0,0 +1,45 @@
+import java.util.*;
+
+/**
+ * Immutable int-indexed copy of a parsed NFA. States and symbols are numbered
+ * in sorted name order, with the names kept in side tables; transitions are
+ * sorted, de-duplicated target arrays. Unlike {@link NFAParser}, which is
+ * refilled by every parse, a snapshot never changes and can be shared across
+ * threads and passed to {@link DFASnapshot#convert} from many at once.
+ */
+public final class NFASnapshot {
+    final IndexedNFA nfa;
+    private final List<String> states;
+    private final List<String> alphabet;
+    
+    private NFASnapshot(IndexedNFA nfa) {
+        this.nfa = nfa;
+        this.states = Collections.unmodifiableList(Arrays.asList(nfa.stateNames));
+        this.alphabet = Collections.unmodifiableList(Arrays.asList(nfa.symbols));
+    }
+    
+    public static NFASnapshot of(NFAParser nfaParser) {
+        return new NFASnapshot(IndexedNFA.from(nfaParser));
+    }
+    
+    public int stateCount() { return nfa.stateCount(); }
+    public int symbolCount() { return nfa.symbolCount(); }
+    public String stateName(int state) { return nfa.stateNames[state]; }
+    public String symbol(int symbol) { return nfa.symbols[symbol]; }
+    // -1 if the definition has no start state
+    public int startState() { return nfa.startState; }
+    public boolean isFinal(int state) { return (nfa.finalStates[state >>> 6] & (1L << state)) != 0; }
+    
+    // Sorted state and symbol names, in id order
+    public List<String> getStates() { return states; }
+    public List<String> getAlphabet() { return alphabet; }
+    
+    /** Targets of {@code state} on {@code symbol} in ascending order, as a copy. */
+    public int[] targets(int state, int symbol) {
+        return nfa.delta[state][symbol].clone();
+    }
+    
+    public int[] epsilonTargets(int state) {
+        return nfa.epsilon[state].clone();
+    }
+}
\ No newline at end of file
@@ -1,19 +1,226 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class NFAToDFAConverter {
-    private static final String DEAD_STATE = "∅";
+    public enum Engine { LEGACY, BITSET }
+    
+    static final String DEAD_STATE = "∅";
     private Map<String, Map<String, String>> dfaTransitions = new HashMap<>();
     private Set<String> dfaStates = new HashSet<>();
     private Set<String> dfaFinalStates = new HashSet<>();
     private String dfaStartState;
+    private Set<String> alphabet = new HashSet<>();
     private NFAParser nfaParser;
+    private Engine engine = Engine.BITSET;
+    private int parallelism = 1;
+    private long closureCacheHits;
+    private long closureCacheMisses;
+    private boolean incremental;
+    private SubsetConstruction previousConstruction;
+    private SymbolClasses previousClasses;
+    private String[] previousNames;
+    private boolean patchable;
+    private int reusedStates;
+    private ConversionMetrics metrics;
+    // The run being measured, or null when metrics are off
+    private ConversionMetrics.Run run;
+    
+    public void setEngine(Engine engine) { this.engine = engine; }
+    public Engine getEngine() { return engine; }
+    
+    // Threads used to expand subset frontiers; only the bitset engine runs in parallel
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    public int getParallelism() { return parallelism; }
+    
+    /**
+     * Keeps the subset construction of each bitset conversion so the next one
+     * can reuse the parts an edit left alone, and updates the previous DFA in
+     * place rather than rebuilding it. Incremental conversions run on one
+     * thread; the first one, with nothing to reuse, still honours the
+     * parallelism.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) {
+            // The DFA held now is no longer one the next conversion may patch
+            patchable = false;
+            previousConstruction = null;
+            previousClasses = null;
+            previousNames = null;
+        }
+    }
+    public boolean isIncremental() { return incremental; }
+    
+    // Times and counts every conversion into metrics; null turns this off
+    public void setMetrics(ConversionMetrics metrics) { this.metrics = metrics; }
+    public ConversionMetrics getMetrics() { return metrics; }
     
     public void convert(NFAParser nfaParser) {
+        convert(nfaParser, new ConversionMonitor());
+    }
+    
+    /**
+     * Converts while reporting to {@code monitor}, which can cancel the run or
+     * stop it on its budget. An aborted conversion throws
+     * {@link ConversionAbortedException} and leaves this converter empty.
+     */
+    public void convert(NFAParser nfaParser, ConversionMonitor monitor) {
         this.nfaParser = nfaParser;
-        clear();
+        boolean patch = engine == Engine.BITSET && incremental && patchable;
+        if (patch) {
+            resetForPatch();
+        } else {
+            clear();
+        }
+        alphabet.addAll(nfaParser.getAlphabet());
+        
+        if (nfaParser.getStartState() == null) {
+            clear();
+            throw new IllegalArgumentException("Start state is not defined");
+        }
+        run = metrics == null ? null : metrics.start(true);
+        try {
+            if (engine == Engine.BITSET) {
+                SymbolClasses classes = SymbolClasses.of(nfaParser);
+                if (run != null) run.end(ConversionMetrics.Phase.INDEX);
+                convertBitset(classes, monitor, patch);
+            } else {
+                convertLegacy(monitor);
+            }
+            addDeadStateIfNeeded();
+        } catch (ConversionAbortedException e) {
+            clear();
+            if (run != null) run.aborted = true;
+            throw e;
+        } finally {
+            if (run != null) {
+                run.end(run.aborted ? ConversionMetrics.Phase.CONSTRUCT : ConversionMetrics.Phase.OUTPUT);
+                run.dfaStates = dfaStates.size();
+                ConversionMetrics.Run finished = run;
+                run = null;
+                metrics.record(finished);
+            }
+        }
+    }
+    
+    /**
+     * Runs the subset construction once per symbol class rather than per
+     * symbol, and stores each DFA row as one target per class.
+     */
+    private void convertBitset(SymbolClasses classes, ConversionMonitor monitor, boolean patch) {
+        IndexedNFA nfa = classes.reduced;
+        SubsetConstruction construction = new SubsetConstruction(nfa, monitor);
+        // Taken out first: an in-place update that aborts halfway leaves it unusable
+        SubsetConstruction previousRun = previousConstruction;
+        previousConstruction = null;
+        if (previousRun != null && !classes.samePartition(previousClasses)) {
+            // Kept rows would still read symbols through the old classes, so start over
+            previousRun = null;
+            if (patch) {
+                dfaStates.clear();
+                dfaTransitions.clear();
+                dfaFinalStates.clear();
+                patch = false;
+            }
+        }
+        if (incremental && previousRun != null) {
+            construction.runIncremental(previousRun);
+        } else if (parallelism > 1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                construction.runParallel(pool);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            construction.run();
+        }
+        closureCacheHits = construction.closures().getHits();
+        closureCacheMisses = construction.closures().getMisses();
+        reusedStates = construction.copiedRowCount();
+        if (run != null) {
+            run.end(ConversionMetrics.Phase.CONSTRUCT);
+            run.nfaStates = nfa.stateCount();
+            run.symbols = classes.symbols.length;
+            construction.report(run);
+            run.begin();
+        }
         
+        // Retired subsets keep a null name
+        String[] names = new String[construction.stateCount()];
+        for (int id = 0; id < names.length; id++) {
+            if (!construction.isLive(id)) continue;
+            int previous = construction.previousId(id);
+            names[id] = previous >= 0 ? previousNames[previous] : nfa.formatStateSet(construction.subset(id));
+        }
+        if (run != null) run.end(ConversionMetrics.Phase.NAME);
+        boolean keepFinals = patch && construction.sameFinalStates();
+        if (patch) {
+            // Drop the subsets the edit made unreachable; everything else is overwritten or kept below
+            boolean[] kept = new boolean[previousNames.length];
+            for (int id = 0; id < names.length; id++) {
+                if (names[id] != null && construction.previousId(id) >= 0) {
+                    kept[construction.previousId(id)] = true;
+                }
+            }
+            for (int previous = 0; previous < kept.length; previous++) {
+                if (!kept[previous] && previousNames[previous] != null) {
+                    dfaStates.remove(previousNames[previous]);
+                    dfaTransitions.remove(previousNames[previous]);
+                    dfaFinalStates.remove(previousNames[previous]);
+                }
+            }
+        }
+        if (!keepFinals) {
+            dfaFinalStates.clear();
+        }
+        for (int id = 0; id < names.length; id++) {
+            if (names[id] == null) continue;
+            boolean known = patch && construction.previousId(id) >= 0;
+            if (!known) {
+                dfaStates.add(names[id]);
+            }
+            if ((!known || !keepFinals) && nfa.isFinal(construction.subset(id))) {
+                dfaFinalStates.add(names[id]);
+            }
+        }
+        dfaStartState = names[construction.startState()];
+        
+        for (int id = 0; id < names.length && nfa.symbolCount() > 0; id++) {
+            if (names[id] == null || patch && construction.rowCopied(id)) continue;
+            String[] targets = new String[nfa.symbolCount()];
+            for (int symbolClass = 0; symbolClass < targets.length; symbolClass++) {
+                int target = construction.transition(id, symbolClass);
+                targets[symbolClass] = target == SubsetConstruction.DEAD ? DEAD_STATE : names[target];
+            }
+            dfaTransitions.put(names[id], classes.row(targets));
+        }
+        
+        if (incremental) {
+            construction.closures().trim();
+            previousConstruction = construction;
+            previousClasses = classes;
+            previousNames = names;
+            patchable = true;
+        }
+    }
+    
+    private void convertLegacy(ConversionMonitor monitor) {
+        monitor.start();
+        int nfaStates = nfaParser.getStates().size();
+        int symbols = nfaParser.getAlphabet().size();
         Set<String> startClosure = getEpsilonClosure(nfaParser.getStartState());
         dfaStartState = formatStateSet(startClosure);
+        if (run != null) {
+            run.nfaStates = nfaStates;
+            run.symbols = symbols;
+            run.subset(startClosure.size());
+        }
         
         Queue<Set<String>> queue = new LinkedList<>();
         Set<String> processedStates = new HashSet<>();
@@ -24,6 +231,7 @@ public class NFAToDFAConverter {
         checkFinalStates(startClosure, dfaStartState);
         
         while (!queue.isEmpty()) {
+            monitor.check(dfaStates.size(), queue.size(), ConversionMonitor.estimateBytes(dfaStates.size(), nfaStates, symbols));
             Set<String> currentStateSet = queue.poll();
             String currentDFAState = formatStateSet(currentStateSet);
             
@@ -32,6 +240,7 @@ public class NFAToDFAConverter {
             }
             
             processedStates.add(currentDFAState);
+            if (run != null) run.subsetsExplored++;
             
             for (String symbol : nfaParser.getAlphabet()) {
                 Set<String> nextStateSet = getEpsilonClosure(move(currentStateSet, symbol));
@@ -44,31 +253,52 @@ public class NFAToDFAConverter {
                     dfaStates.add(nextDFAState);
                     queue.add(nextStateSet);
                     checkFinalStates(nextStateSet, nextDFAState);
+                    if (run != null) run.subset(nextStateSet.size());
                 }
             }
         }
-        
-        addDeadStateIfNeeded();
+        if (run != null) {
+            // Naming was timed call by call inside the loop
+            run.end(ConversionMetrics.Phase.CONSTRUCT);
+            run.add(ConversionMetrics.Phase.CONSTRUCT, -run.getPhaseNanos(ConversionMetrics.Phase.NAME));
+        }
+    }
+    
+    /** Keeps the DFA of the last incremental conversion, which the next one edits. */
+    private void resetForPatch() {
+        patchable = false;
+        dfaStates.remove(DEAD_STATE);
+        dfaTransitions.remove(DEAD_STATE);
+        dfaStartState = null;
+        alphabet.clear();
+        closureCacheHits = 0;
+        closureCacheMisses = 0;
+        reusedStates = 0;
     }
     
     private void clear() {
+        patchable = false;
         dfaTransitions.clear();
         dfaStates.clear();
         dfaFinalStates.clear();
         dfaStartState = null;
+        alphabet.clear();
+        closureCacheHits = 0;
+        closureCacheMisses = 0;
+        reusedStates = 0;
     }
     
     private Set<String> getEpsilonClosure(String state) {
         Set<String> closure = new HashSet<>();
-        Stack<String> stack = new Stack<>();
+        Deque<String> stack = new ArrayDeque<>();
         
         closure.add(state);
         stack.push(state);
         
-        while (!stack.empty()) {
+        while (!stack.isEmpty()) {
             String currentState = stack.pop();
             Set<String> epsilonTransitions = nfaParser.getNFATransitions()
-                .getOrDefault(currentState + ",ε", new HashSet<>());
+                .getOrDefault(currentState + ",ε", Collections.emptySet());
             for (String nextState : epsilonTransitions) {
                 if (!closure.contains(nextState)) {
                     closure.add(nextState);
@@ -81,6 +311,7 @@ public class NFAToDFAConverter {
     }
     
     private Set<String> getEpsilonClosure(Set<String> states) {
+        if (run != null) run.closureCalls++;
         Set<String> closure = new HashSet<>();
         for (String state : states) {
             closure.addAll(getEpsilonClosure(state));
@@ -89,10 +320,11 @@ public class NFAToDFAConverter {
     }
     
     private Set<String> move(Set<String> states, String symbol) {
+        if (run != null) run.moveCalls++;
         Set<String> result = new HashSet<>();
         for (String state : states) {
             Set<String> transitions = nfaParser.getNFATransitions()
-                .getOrDefault(state + "," + symbol, new HashSet<>());
+                .getOrDefault(state + "," + symbol, Collections.emptySet());
             result.addAll(transitions);
         }
         return result;
@@ -114,7 +346,7 @@ public class NFAToDFAConverter {
         if (needDeadState) {
             dfaStates.add(DEAD_STATE);
             Map<String, String> deadTransitions = new HashMap<>();
-            for (String symbol : nfaParser.getAlphabet()) {
+            for (String symbol : alphabet) {
                 deadTransitions.put(symbol, DEAD_STATE);
             }
             dfaTransitions.put(DEAD_STATE, deadTransitions);
@@ -123,12 +355,20 @@ public class NFAToDFAConverter {
     
     private String formatStateSet(Set<String> stateSet) {
         if (stateSet.isEmpty()) return DEAD_STATE;
+        long start = run == null ? 0 : System.nanoTime();
         List<String> sortedStates = new ArrayList<>(stateSet);
         Collections.sort(sortedStates);
-        return "{" + String.join(",", sortedStates) + "}";
+        String name = "{" + String.join(",", sortedStates) + "}";
+        if (run != null) run.add(ConversionMetrics.Phase.NAME, System.nanoTime() - start);
+        return name;
     }
     
     public String generateDFAOutput() {
+        return formatDFA(dfaStates, dfaTransitions, dfaStartState, dfaFinalStates, alphabet);
+    }
+    
+    static String formatDFA(Set<String> dfaStates, Map<String, Map<String, String>> dfaTransitions,
+                            String dfaStartState, Set<String> dfaFinalStates, Set<String> alphabet) {
         StringBuilder output = new StringBuilder();
         
         output.append("DFA States: ").append(String.join(", ", dfaStates)).append("\n\n");
@@ -139,7 +379,7 @@ public class NFAToDFAConverter {
         
         for (String state : sortedStates) {
             Map<String, String> transitions = dfaTransitions.getOrDefault(state, new HashMap<>());
-            List<String> sortedSymbols = new ArrayList<>(nfaParser.getAlphabet());
+            List<String> sortedSymbols = new ArrayList<>(alphabet);
             Collections.sort(sortedSymbols);
             
             for (String symbol : sortedSymbols) {
@@ -154,9 +394,69 @@ public class NFAToDFAConverter {
         return output.toString();
     }
     
-    // Getters for the converted DFA
+    /** Replaces the current DFA with one produced elsewhere, e.g. decoded from disk. */
+    void restore(Set<String> states, Map<String, Map<String, String>> transitions, String startState,
+                 Set<String> finalStates, Set<String> symbols) {
+        clear();
+        dfaStates.addAll(states);
+        dfaTransitions.putAll(transitions);
+        dfaStartState = startState;
+        dfaFinalStates.addAll(finalStates);
+        alphabet.addAll(symbols);
+    }
+    
+    /**
+     * Converts the same NFA with the bitset engine at 1..maxThreads threads and
+     * reports the best wall time of each. Every run must yield the same DFA.
+     */
+    public static String scalingReport(NFAParser nfaParser, int maxThreads, int runs) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-8s %12s %8s %10s%n", "Threads", "Best (ms)", "Speedup", "DFA states"));
+        
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        Map<String, Map<String, String>> reference = null;
+        double baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            converter.setParallelism(threads);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                converter.convert(nfaParser);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            if (reference == null) {
+                reference = new HashMap<>(converter.getDFATransitions());
+            } else if (!reference.equals(converter.getDFATransitions())) {
+                throw new IllegalStateException("Parallel conversion diverged at " + threads + " threads");
+            }
+            double millis = best / 1e6;
+            if (threads == 1) {
+                baseline = millis;
+            }
+            report.append(String.format("%-8d %12.2f %7.2fx %10d%n", threads, millis, baseline / millis,
+                converter.getDFAStates().size()));
+        }
+        return report.toString();
+    }
+    
+    // Getters for the converted DFA; these are the live collections, refilled by the next convert
     public Set<String> getDFAStates() { return dfaStates; }
+    /**
+     * DFA rows by state name. The bitset engine stores each row as a read-only
+     * map holding one target per symbol class, so {@code put} on a row throws
+     * {@link UnsupportedOperationException}; copy a row into a {@link HashMap}
+     * to change it. Rows of the legacy engine and of the dead state are plain
+     * hash maps.
+     */
     public Map<String, Map<String, String>> getDFATransitions() { return dfaTransitions; }
     public String getDFAStartState() { return dfaStartState; }
     public Set<String> getDFAFinalStates() { return dfaFinalStates; }
+    public Set<String> getAlphabet() { return alphabet; }
+    
+    // Epsilon-closure cache statistics of the last bitset conversion
+    public long getClosureCacheHits() { return closureCacheHits; }
+    public long getClosureCacheMisses() { return closureCacheMisses; }
+    
+    // DFA states of the last incremental conversion whose whole row was copied from the one before
+    public int getReusedStates() { return reusedStates; }
 }
\ No newline at end of file
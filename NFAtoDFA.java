@@ -1,16 +1,20 @@
-import javax.swing.*;
-import java.awt.*;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
-import java.util.Collections;
-import java.util.Set;
-
-public class NFAtoDFA {
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            new AutomataGUI().setVisible(true);
-        });
-    }
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.Set;
+
+public class NFAtoDFA {
+    public static void main(String[] args) {
+        // Any arguments select the headless batch mode; see BatchConverter for the options
+        if (args.length > 0) {
+            System.exit(BatchConverter.run(args));
+        }
+        SwingUtilities.invokeLater(() -> {
+            new AutomataGUI().setVisible(true);
+        });
+    }
 }
\ No newline at end of file
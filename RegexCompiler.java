@@ -0,0 +1,429 @@
+import java.util.*;
+
+/**
+ * Builds NFAs from regular expressions straight into an {@link NFAParser},
+ * so they convert like any parsed definition. Patterns are made of
+ * single-character symbols, classes such as {@code [a-z0-9_]},
+ * concatenation, {@code |}, {@code *}, {@code +}, {@code ?} and parentheses,
+ * with {@code ε} for the empty string and {@code \} to escape a
+ * metacharacter; whitespace is ignored. {@code ε} is never a symbol, so
+ * {@code \ε} and classes holding it are rejected.
+ *
+ * {@link Construction#GLUSHKOV} builds the position automaton: a start state
+ * {@code q0} plus one state {@code qi} per symbol or class occurrence,
+ * entered by reading the i-th symbol or class of the pattern, wired from the first, last and
+ * follow sets of the parse tree. It has no epsilon edges, so the converter's
+ * closures are all trivial. {@link Construction#THOMPSON} builds the
+ * textbook epsilon NFA, with two states per operator and epsilon edges
+ * gluing the pieces, and is kept for comparison.
+ */
+public final class RegexCompiler {
+    public enum Construction { GLUSHKOV, THOMPSON }
+    
+    private enum Kind { EMPTY, SYMBOL, CONCAT, UNION, STAR, PLUS, OPTIONAL }
+    
+    private static final class Node {
+        final Kind kind;
+        final Node[] children;
+        // SYMBOL: the symbols it matches, one unless it is a class
+        final String[] symbols;
+        // Glushkov: the state of a SYMBOL, and the sets of every node
+        int position;
+        boolean nullable;
+        int[] first;
+        int[] last;
+        
+        Node(Kind kind, Node[] children, String[] symbols) {
+            this.kind = kind;
+            this.children = children;
+            this.symbols = symbols;
+        }
+    }
+    
+    private static final int[] NONE = new int[0];
+    
+    private final String pattern;
+    private int pos;
+    private final List<Node> positions = new ArrayList<>();
+    
+    private RegexCompiler(String pattern) {
+        this.pattern = pattern;
+        // Position 0 is the Glushkov start state
+        positions.add(null);
+    }
+    
+    /** Replaces the contents of {@code parser} with the Glushkov NFA of {@code regex}. */
+    public static void compile(String regex, NFAParser parser) {
+        compile(regex, Construction.GLUSHKOV, parser);
+    }
+    
+    public static void compile(String regex, Construction construction, NFAParser parser) {
+        RegexCompiler compiler = new RegexCompiler(regex);
+        Node root = compiler.parse();
+        parser.clear();
+        compiler.emit(root, construction, parser);
+    }
+    
+    /** Adds the Glushkov NFA of {@code regex} to a parser that has no states yet, for a {@code Regex:} line. */
+    static void append(String regex, NFAParser parser) {
+        RegexCompiler compiler = new RegexCompiler(regex);
+        compiler.emit(compiler.parse(), Construction.GLUSHKOV, parser);
+    }
+    
+    private void emit(Node root, Construction construction, NFAParser parser) {
+        if (construction == Construction.GLUSHKOV) {
+            emitGlushkov(root, parser);
+        } else {
+            emitThompson(root, parser);
+        }
+    }
+    
+    // Parsing: union := concat ('|' concat)*, concat := repeat*, repeat := atom [*+?]*
+    
+    private Node parse() {
+        Node root = parseUnion();
+        if (peek() >= 0) {
+            throw error("unmatched )");
+        }
+        return root;
+    }
+    
+    private Node parseUnion() {
+        List<Node> alternatives = new ArrayList<>();
+        alternatives.add(parseConcat());
+        while (peek() == '|') {
+            pos++;
+            alternatives.add(parseConcat());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : node(Kind.UNION, alternatives);
+    }
+    
+    private Node parseConcat() {
+        List<Node> parts = new ArrayList<>();
+        for (int c = peek(); c >= 0 && c != '|' && c != ')'; c = peek()) {
+            parts.add(parseRepeat());
+        }
+        if (parts.isEmpty()) return new Node(Kind.EMPTY, null, null);
+        return parts.size() == 1 ? parts.get(0) : node(Kind.CONCAT, parts);
+    }
+    
+    private Node parseRepeat() {
+        Node atom = parseAtom();
+        for (int c = peek(); c == '*' || c == '+' || c == '?'; c = peek()) {
+            pos++;
+            Kind kind = c == '*' ? Kind.STAR : c == '+' ? Kind.PLUS : Kind.OPTIONAL;
+            atom = new Node(kind, new Node[] {atom}, null);
+        }
+        return atom;
+    }
+    
+    private Node parseAtom() {
+        char c = pattern.charAt(pos);
+        switch (c) {
+            case '[':
+                pos++;
+                return symbolClass();
+            case '(':
+                pos++;
+                Node group = parseUnion();
+                if (peek() != ')') {
+                    throw error("missing )");
+                }
+                pos++;
+                return group;
+            case '*':
+            case '+':
+            case '?':
+                throw error("nothing to repeat");
+            case 'ε':
+                pos++;
+                return new Node(Kind.EMPTY, null, null);
+            case '\\':
+                if (++pos == pattern.length()) {
+                    throw error("trailing \\");
+                }
+                return symbol(pattern.charAt(pos++));
+            default:
+                pos++;
+                return symbol(c);
+        }
+    }
+    
+    private Node symbol(char c) {
+        return symbol(new String[] {String.valueOf(c)});
+    }
+    
+    private Node symbol(String[] symbols) {
+        // The parser reads ε as the empty string, so it cannot label a real edge
+        if (Arrays.asList(symbols).contains(NFAParser.EPSILON)) {
+            throw error(NFAParser.EPSILON + " cannot be a symbol, even escaped or in a class");
+        }
+        Node symbol = new Node(Kind.SYMBOL, null, symbols);
+        symbol.position = positions.size();
+        positions.add(symbol);
+        return symbol;
+    }
+    
+    /** The rest of a class after its {@code [}: single characters and ranges like {@code a-z}, up to {@code ]}. */
+    private Node symbolClass() {
+        if (pos < pattern.length() && pattern.charAt(pos) == '^') {
+            throw error("negated classes are not supported");
+        }
+        TreeSet<String> members = new TreeSet<>();
+        while (true) {
+            if (pos == pattern.length()) {
+                throw error("missing ]");
+            }
+            char low = pattern.charAt(pos++);
+            if (low == ']') break;
+            if (Character.isWhitespace(low)) continue;
+            if (low == '\\') {
+                if (pos == pattern.length()) {
+                    throw error("trailing \\");
+                }
+                low = pattern.charAt(pos++);
+            }
+            char high = low;
+            if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                high = pattern.charAt(pos + 1);
+                pos += 2;
+                if (high < low) {
+                    throw error("empty range " + low + "-" + high);
+                }
+            }
+            for (int c = low; c <= high; c++) {
+                members.add(String.valueOf((char) c));
+            }
+        }
+        if (members.isEmpty()) {
+            throw error("empty class");
+        }
+        return symbol(members.toArray(new String[0]));
+    }
+    
+    /** The next character that is not whitespace, or -1 at the end. */
+    private int peek() {
+        while (pos < pattern.length() && Character.isWhitespace(pattern.charAt(pos))) {
+            pos++;
+        }
+        return pos < pattern.length() ? pattern.charAt(pos) : -1;
+    }
+    
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid regex at position " + pos + ": " + message + " in " + pattern);
+    }
+    
+    private static Node node(Kind kind, List<Node> children) {
+        return new Node(kind, children.toArray(new Node[0]), null);
+    }
+    
+    private static int[] addSymbols(String[] names, NFAParser parser) {
+        int[] ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = parser.addSymbol(names[i]);
+            parser.declareSymbol(ids[i]);
+        }
+        return ids;
+    }
+    
+    // Glushkov construction
+    
+    private void emitGlushkov(Node root, NFAParser parser) {
+        BitSet[] follow = new BitSet[positions.size()];
+        analyze(root, follow);
+        
+        int[] states = new int[positions.size()];
+        int[][] symbols = new int[positions.size()][];
+        for (int p = 0; p < states.length; p++) {
+            states[p] = parser.addState("q" + p);
+            parser.declareState(states[p]);
+            if (p > 0) {
+                symbols[p] = addSymbols(positions.get(p).symbols, parser);
+            }
+        }
+        parser.setStartStateId(states[0]);
+        for (int q : root.first) {
+            for (int symbol : symbols[q]) {
+                parser.addEdge(states[0], symbol, states[q]);
+            }
+        }
+        for (int p = 1; p < follow.length; p++) {
+            if (follow[p] == null) continue;
+            for (int q = follow[p].nextSetBit(0); q >= 0; q = follow[p].nextSetBit(q + 1)) {
+                for (int symbol : symbols[q]) {
+                    parser.addEdge(states[p], symbol, states[q]);
+                }
+            }
+        }
+        for (int p : root.last) {
+            parser.markFinal(states[p]);
+        }
+        if (root.nullable) {
+            parser.markFinal(states[0]);
+        }
+    }
+    
+    /**
+     * Fills in nullable, first and last bottom-up and adds to {@code follow}.
+     * Positions in different subtrees are distinct, so unions of first and
+     * last sets are plain concatenations.
+     */
+    private static void analyze(Node node, BitSet[] follow) {
+        if (node.children != null) {
+            for (Node child : node.children) {
+                analyze(child, follow);
+            }
+        }
+        switch (node.kind) {
+            case EMPTY:
+                node.nullable = true;
+                node.first = node.last = NONE;
+                break;
+            case SYMBOL:
+                node.first = node.last = new int[] {node.position};
+                break;
+            case UNION:
+                node.first = concat(node.children, 0, node.children.length, true);
+                node.last = concat(node.children, 0, node.children.length, false);
+                for (Node child : node.children) {
+                    node.nullable |= child.nullable;
+                }
+                break;
+            case CONCAT: {
+                Node[] children = node.children;
+                // First sets run up to and including the first child that cannot be empty, last sets back from the end likewise
+                int firstEnd = 1;
+                while (firstEnd < children.length && children[firstEnd - 1].nullable) {
+                    firstEnd++;
+                }
+                int lastStart = children.length - 1;
+                while (lastStart > 0 && children[lastStart].nullable) {
+                    lastStart--;
+                }
+                node.first = concat(children, 0, firstEnd, true);
+                node.last = concat(children, lastStart, children.length, false);
+                node.nullable = firstEnd == children.length && children[children.length - 1].nullable;
+                // Each last position is followed by the first of the next child, and past it while that one may be empty
+                for (int i = 0; i + 1 < children.length; i++) {
+                    for (int j = i + 1; j < children.length; j++) {
+                        link(children[i].last, children[j].first, follow);
+                        if (!children[j].nullable) break;
+                    }
+                }
+                break;
+            }
+            case STAR:
+            case PLUS:
+            case OPTIONAL: {
+                Node child = node.children[0];
+                node.first = child.first;
+                node.last = child.last;
+                node.nullable = node.kind != Kind.PLUS || child.nullable;
+                if (node.kind != Kind.OPTIONAL) {
+                    link(child.last, child.first, follow);
+                }
+                break;
+            }
+        }
+    }
+    
+    private static int[] concat(Node[] nodes, int from, int to, boolean first) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            length += (first ? nodes[i].first : nodes[i].last).length;
+        }
+        int[] result = new int[length];
+        int next = 0;
+        for (int i = from; i < to; i++) {
+            int[] set = first ? nodes[i].first : nodes[i].last;
+            System.arraycopy(set, 0, result, next, set.length);
+            next += set.length;
+        }
+        return result;
+    }
+    
+    private static void link(int[] from, int[] to, BitSet[] follow) {
+        if (to.length == 0) return;
+        for (int p : from) {
+            if (follow[p] == null) {
+                follow[p] = new BitSet();
+            }
+            for (int q : to) {
+                follow[p].set(q);
+            }
+        }
+    }
+    
+    // Thompson construction
+    
+    private int stateCount;
+    private int epsilon;
+    
+    private void emitThompson(Node root, NFAParser parser) {
+        epsilon = parser.addSymbol(NFAParser.EPSILON);
+        int[] fragment = thompson(root, parser);
+        parser.setStartStateId(fragment[0]);
+        parser.markFinal(fragment[1]);
+    }
+    
+    /** Builds {@code node} and returns its entry and exit states. */
+    private int[] thompson(Node node, NFAParser parser) {
+        switch (node.kind) {
+            case SYMBOL: {
+                int start = newState(parser);
+                int end = newState(parser);
+                for (int symbol : addSymbols(node.symbols, parser)) {
+                    parser.addEdge(start, symbol, end);
+                }
+                return new int[] {start, end};
+            }
+            case CONCAT: {
+                int[] whole = thompson(node.children[0], parser);
+                for (int i = 1; i < node.children.length; i++) {
+                    int[] next = thompson(node.children[i], parser);
+                    parser.addEdge(whole[1], epsilon, next[0]);
+                    whole[1] = next[1];
+                }
+                return whole;
+            }
+            case UNION: {
+                int start = newState(parser);
+                int end = newState(parser);
+                for (Node child : node.children) {
+                    int[] branch = thompson(child, parser);
+                    parser.addEdge(start, epsilon, branch[0]);
+                    parser.addEdge(branch[1], epsilon, end);
+                }
+                return new int[] {start, end};
+            }
+            case STAR:
+            case PLUS:
+            case OPTIONAL: {
+                int start = newState(parser);
+                int[] body = thompson(node.children[0], parser);
+                int end = newState(parser);
+                parser.addEdge(start, epsilon, body[0]);
+                parser.addEdge(body[1], epsilon, end);
+                if (node.kind != Kind.PLUS) {
+                    parser.addEdge(start, epsilon, end);
+                }
+                if (node.kind != Kind.OPTIONAL) {
+                    parser.addEdge(body[1], epsilon, body[0]);
+                }
+                return new int[] {start, end};
+            }
+            default: {
+                int start = newState(parser);
+                int end = newState(parser);
+                parser.addEdge(start, epsilon, end);
+                return new int[] {start, end};
+            }
+        }
+    }
+    
+    private int newState(NFAParser parser) {
+        int state = parser.addState("q" + stateCount++);
+        parser.declareState(state);
+        return state;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+import java.util.Arrays;
+
+/**
+ * Immutable set of NFA state ids backed by a {@code long[]} bitset. The hash
+ * is computed once so subsets can be interned cheaply during construction.
+ */
+final class StateSet {
+    final long[] words;
+    private final int hash;
+    
+    StateSet(long[] words) {
+        this.words = words;
+        this.hash = Arrays.hashCode(words);
+    }
+    
+    boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+    
+    boolean contains(int state) {
+        return (words[state >>> 6] & (1L << state)) != 0;
+    }
+    
+    boolean intersects(long[] other) {
+        for (int i = 0; i < words.length; i++) {
+            if ((words[i] & other[i]) != 0) return true;
+        }
+        return false;
+    }
+    
+    int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+    
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof StateSet)) return false;
+        StateSet other = (StateSet) o;
+        return hash == other.hash && Arrays.equals(words, other.words);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+import java.util.*;
+
+/**
+ * Concurrent interning map for subsets, split into independently locked
+ * stripes so frontier workers only contend when their subsets hash together.
+ * Every distinct subset maps to one {@link Slot}; slot ids are handed out
+ * later by a single thread, which keeps state numbering deterministic.
+ */
+final class StripedStateTable {
+    static final class Slot {
+        final StateSet set;
+        int id = -1;
+        
+        Slot(StateSet set) {
+            this.set = set;
+        }
+    }
+    
+    private final Object[] locks;
+    private final List<Map<StateSet, Slot>> stripes;
+    private final int mask;
+    
+    StripedStateTable(int concurrency) {
+        int size = Integer.highestOneBit(Math.max(1, concurrency * 4 - 1)) << 1;
+        this.mask = size - 1;
+        this.locks = new Object[size];
+        this.stripes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            locks[i] = new Object();
+            stripes.add(new HashMap<>());
+        }
+    }
+    
+    Slot intern(StateSet set) {
+        int hash = set.hashCode();
+        int stripe = (hash ^ (hash >>> 16)) & mask;
+        synchronized (locks[stripe]) {
+            Map<StateSet, Slot> map = stripes.get(stripe);
+            Slot slot = map.get(set);
+            if (slot == null) {
+                slot = new Slot(set);
+                map.put(set, slot);
+            }
+            return slot;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,458 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bitset subset construction over an {@link IndexedNFA}. DFA states are
+ * numbered in discovery order (breadth first, symbols in sorted order) and
+ * transitions are kept in a flat table indexed by {@code state * symbols + symbol}.
+ * {@link #runParallel} expands each BFS frontier on a fork-join pool and numbers
+ * the new subsets afterwards in frontier order, so it produces exactly the
+ * numbering of {@link #run}. Both check their {@link ConversionMonitor} once
+ * per expanded state; the parallel one checks budgets between frontiers and
+ * only polls for cancellation and time inside one. {@link #runIncremental}
+ * builds on the construction of an earlier version of the NFA.
+ */
+final class SubsetConstruction {
+    static final int DEAD = -1;
+    private static final int FRONTIER_SPLIT = 16;
+    
+    private final IndexedNFA nfa;
+    private List<StateSet> subsets = new ArrayList<>();
+    private Map<StateSet, Integer> ids = new HashMap<>();
+    private final EpsilonClosureTable closures;
+    private final ConversionMonitor monitor;
+    private int[] transitions = new int[64];
+    private int start;
+    private BitSet retired = new BitSet();
+    // Rows built and moves made by the last run, for ConversionMetrics
+    private int expanded;
+    private long moves;
+    
+    // Bookkeeping of runIncremental
+    private int[] previousIds;
+    private final BitSet copiedRows = new BitSet();
+    private final BitSet queued = new BitSet();
+    private int[] pending;
+    private int pendingCount;
+    private boolean sameFinalStates;
+    
+    SubsetConstruction(IndexedNFA nfa) {
+        this(nfa, new ConversionMonitor());
+    }
+    
+    SubsetConstruction(IndexedNFA nfa, ConversionMonitor monitor) {
+        this.nfa = nfa;
+        this.monitor = monitor;
+        monitor.start();
+        this.closures = new EpsilonClosureTable(nfa);
+    }
+    
+    private void check(int queueDepth) {
+        int states = subsets.size();
+        monitor.check(states, queueDepth, ConversionMonitor.estimateBytes(states, nfa.stateCount(), nfa.symbolCount()));
+    }
+    
+    void run() {
+        intern(new StateSet(closures.closure(nfa.startState)));
+        
+        int symbolCount = nfa.symbolCount();
+        for (int current = 0; current < subsets.size(); current++) {
+            check(subsets.size() - current);
+            StateSet currentSet = subsets.get(current);
+            ensureTransitionCapacity((current + 1) * symbolCount);
+            
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                long[] next = nfa.move(currentSet.words, symbol);
+                int target = DEAD;
+                if (next != null) {
+                    target = intern(closures.closure(new StateSet(next)));
+                }
+                transitions[current * symbolCount + symbol] = target;
+            }
+        }
+        expanded = subsets.size();
+        moves = (long) expanded * symbolCount;
+    }
+    
+    void runParallel(ForkJoinPool pool) {
+        StripedStateTable table = new StripedStateTable(pool.getParallelism());
+        StripedStateTable.Slot start = table.intern(new StateSet(closures.closure(nfa.startState)));
+        start.id = 0;
+        subsets.add(start.set);
+        
+        int symbolCount = nfa.symbolCount();
+        List<StripedStateTable.Slot> frontier = Collections.singletonList(start);
+        while (!frontier.isEmpty()) {
+            check(frontier.size());
+            StripedStateTable.Slot[][] successors = new StripedStateTable.Slot[frontier.size()][];
+            pool.invoke(new ExpandFrontier(table, frontier, successors, 0, frontier.size()));
+            // Workers that saw a stop request left their rows empty; this throws before those are read
+            if (monitor.shouldStop()) {
+                check(frontier.size());
+            }
+            
+            List<StripedStateTable.Slot> next = new ArrayList<>();
+            for (int i = 0; i < successors.length; i++) {
+                int current = frontier.get(i).id;
+                ensureTransitionCapacity((current + 1) * symbolCount);
+                for (int symbol = 0; symbol < symbolCount; symbol++) {
+                    StripedStateTable.Slot slot = successors[i][symbol];
+                    int target = DEAD;
+                    if (slot != null) {
+                        if (slot.id < 0) {
+                            slot.id = subsets.size();
+                            subsets.add(slot.set);
+                            next.add(slot);
+                        }
+                        target = slot.id;
+                    }
+                    transitions[current * symbolCount + symbol] = target;
+                }
+            }
+            frontier = next;
+        }
+        expanded = subsets.size();
+        moves = (long) expanded * symbolCount;
+    }
+    
+    /**
+     * Builds the DFA of this construction's NFA, reusing {@code previous},
+     * which was built for an earlier version of the same definition and must
+     * not be used afterwards. A subset keeps its old row on every shared
+     * symbol if none of its states is {@link NFADiff#dirty}, and each old
+     * target is taken over if none of its states is {@link NFADiff#tainted}:
+     * the move then reaches the same states, and their closures are
+     * unchanged. Everything else is recomputed, so only subsets reachable
+     * through changed NFA states are explored afresh.
+     *
+     * When the edit kept every state and symbol id, {@code previous}'s tables
+     * are updated in place: only the affected rows are recomputed, and
+     * subsets that became unreachable are retired rather than removed, which
+     * leaves gaps in the numbering (see {@link #isLive}). Otherwise, or once
+     * retired subsets outnumber live ones, the DFA is walked again in the
+     * numbering of {@link #run}, copying rows instead of recomputing them.
+     */
+    void runIncremental(SubsetConstruction previous) {
+        NFADiff diff = new NFADiff(previous.nfa, previous.closures, nfa, closures);
+        sameFinalStates = diff.sameFinalStates();
+        if (previous.ids.size() != previous.subsets.size()) {
+            // runParallel interns in its own table
+            for (int id = previous.ids.size(); id < previous.subsets.size(); id++) {
+                previous.ids.put(previous.subsets.get(id), id);
+            }
+        }
+        if (diff.sameNumbering() && previous.retired.cardinality() <= previous.subsets.size() / 2) {
+            update(previous, diff);
+        } else {
+            rewalk(previous, diff);
+        }
+    }
+    
+    private void update(SubsetConstruction previous, NFADiff diff) {
+        subsets = previous.subsets;
+        ids = previous.ids;
+        transitions = previous.transitions;
+        retired = previous.retired;
+        int oldCount = subsets.size();
+        int symbolCount = nfa.symbolCount();
+        previousIds = new int[Math.max(64, oldCount)];
+        for (int id = 0; id < oldCount; id++) {
+            previousIds[id] = retired.get(id) ? -1 : id;
+        }
+        
+        // Recompute subsets with a changed state, and those leading into a subset whose closure may have changed
+        int[] changedWords = diff.changedWords();
+        BitSet tainted = new BitSet();
+        for (int id = 0; id < oldCount; id++) {
+            if (retired.get(id)) continue;
+            long[] words = subsets.get(id).words;
+            for (int w : changedWords) {
+                if ((words[w] & diff.dirty[w]) != 0) queued.set(id);
+                if ((words[w] & diff.tainted[w]) != 0) tainted.set(id);
+            }
+        }
+        if (!tainted.isEmpty()) {
+            for (int id = 0; id < oldCount; id++) {
+                if (retired.get(id) || queued.get(id)) continue;
+                for (int symbol = 0; symbol < symbolCount; symbol++) {
+                    int target = transitions[id * symbolCount + symbol];
+                    if (target != DEAD && tainted.get(target)) {
+                        queued.set(id);
+                        break;
+                    }
+                }
+            }
+        }
+        pending = new int[Math.max(64, queued.cardinality())];
+        for (int id = queued.nextSetBit(0); id >= 0; id = queued.nextSetBit(id + 1)) {
+            pending[pendingCount++] = id;
+        }
+        
+        start = internOrRevive(new StateSet(closures.closure(nfa.startState)));
+        while (pendingCount > 0) {
+            check(pendingCount);
+            int current = pending[--pendingCount];
+            StateSet currentSet = subsets.get(current);
+            expanded++;
+            moves += symbolCount;
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                long[] next = nfa.move(currentSet.words, symbol);
+                int target = DEAD;
+                if (next != null) {
+                    target = internOrRevive(closures.closure(new StateSet(next)));
+                }
+                transitions[current * symbolCount + symbol] = target;
+            }
+        }
+        
+        // Retire what the edit cut off; their rows go stale and are recomputed if they come back
+        BitSet reached = new BitSet();
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = start;
+        reached.set(start);
+        while (top > 0) {
+            int state = stack[--top];
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int target = transitions[state * symbolCount + symbol];
+                if (target != DEAD && !reached.get(target)) {
+                    reached.set(target);
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = target;
+                }
+            }
+        }
+        retired.set(0, subsets.size());
+        retired.andNot(reached);
+        
+        for (int id = 0; id < oldCount; id++) {
+            if (previousIds[id] >= 0 && !queued.get(id) && !retired.get(id)) {
+                copiedRows.set(id);
+            }
+        }
+    }
+    
+    private int internOrRevive(StateSet set) {
+        Integer id = ids.get(set);
+        int state;
+        if (id == null) {
+            state = intern(set);
+            ensureTransitionCapacity((state + 1) * nfa.symbolCount());
+            if (state >= previousIds.length) {
+                previousIds = Arrays.copyOf(previousIds, previousIds.length * 2);
+            }
+            previousIds[state] = -1;
+        } else if (retired.get(id)) {
+            state = id;
+            retired.clear(state);
+        } else {
+            return id;
+        }
+        if (!queued.get(state)) {
+            queued.set(state);
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+            }
+            pending[pendingCount++] = state;
+        }
+        return state;
+    }
+    
+    private void rewalk(SubsetConstruction previous, NFADiff diff) {
+        int oldCount = previous.subsets.size();
+        boolean[] rowReusable = new boolean[oldCount];
+        boolean[] targetReusable = new boolean[oldCount];
+        for (int old = 0; old < oldCount; old++) {
+            if (previous.retired.get(old)) continue;
+            StateSet set = previous.subsets.get(old);
+            rowReusable[old] = !set.intersects(diff.dirty);
+            targetReusable[old] = !set.intersects(diff.tainted);
+        }
+        int[] newIds = new int[oldCount];
+        Arrays.fill(newIds, -1);
+        previousIds = new int[64];
+        
+        intern(new StateSet(closures.closure(nfa.startState)), previous, diff, newIds);
+        
+        int symbolCount = nfa.symbolCount();
+        int oldSymbolCount = previous.nfa.symbolCount();
+        for (int current = 0; current < subsets.size(); current++) {
+            check(subsets.size() - current);
+            StateSet currentSet = subsets.get(current);
+            ensureTransitionCapacity((current + 1) * symbolCount);
+            int old = previousIds[current];
+            boolean copyRow = old >= 0 && rowReusable[old];
+            boolean copiedWhole = copyRow && symbolCount == oldSymbolCount;
+            
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int oldSymbol = diff.oldSymbol(symbol);
+                int target;
+                int oldTarget = copyRow && oldSymbol >= 0 ? previous.transitions[old * oldSymbolCount + oldSymbol] : 0;
+                if (copyRow && oldSymbol >= 0 && oldTarget == DEAD) {
+                    target = DEAD;
+                } else if (copyRow && oldSymbol >= 0 && targetReusable[oldTarget]) {
+                    target = newIds[oldTarget];
+                    if (target < 0) {
+                        target = intern(diff.toNew(previous.subsets.get(oldTarget)), oldTarget, newIds);
+                    }
+                } else {
+                    copiedWhole = false;
+                    moves++;
+                    long[] next = nfa.move(currentSet.words, symbol);
+                    target = DEAD;
+                    if (next != null) {
+                        target = intern(closures.closure(new StateSet(next)), previous, diff, newIds);
+                    }
+                }
+                transitions[current * symbolCount + symbol] = target;
+            }
+            if (copiedWhole) {
+                copiedRows.set(current);
+            }
+        }
+        expanded = subsets.size() - copiedRows.cardinality();
+    }
+    
+    private int intern(StateSet set, SubsetConstruction previous, NFADiff diff, int[] newIds) {
+        Integer id = ids.get(set);
+        if (id != null) {
+            return id;
+        }
+        StateSet old = diff.toOld(set);
+        Integer previousId = old == null ? null : previous.ids.get(old);
+        // A retired subset's row is stale, so it counts as new
+        boolean live = previousId != null && !previous.retired.get(previousId);
+        return intern(set, live ? previousId : -1, newIds);
+    }
+    
+    private int intern(StateSet set, int previousId, int[] newIds) {
+        int newId = intern(set);
+        if (newId >= previousIds.length) {
+            previousIds = Arrays.copyOf(previousIds, previousIds.length * 2);
+        }
+        previousIds[newId] = previousId;
+        if (previousId >= 0) {
+            newIds[previousId] = newId;
+        }
+        return newId;
+    }
+    
+    private final class ExpandFrontier extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final StripedStateTable table;
+        private final List<StripedStateTable.Slot> frontier;
+        private final StripedStateTable.Slot[][] successors;
+        private final int from;
+        private final int to;
+        
+        ExpandFrontier(StripedStateTable table, List<StripedStateTable.Slot> frontier,
+                       StripedStateTable.Slot[][] successors, int from, int to) {
+            this.table = table;
+            this.frontier = frontier;
+            this.successors = successors;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > FRONTIER_SPLIT) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ExpandFrontier(table, frontier, successors, from, mid),
+                          new ExpandFrontier(table, frontier, successors, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                if (monitor.shouldStop()) return;
+                StateSet current = frontier.get(i).set;
+                StripedStateTable.Slot[] row = new StripedStateTable.Slot[nfa.symbolCount()];
+                for (int symbol = 0; symbol < row.length; symbol++) {
+                    long[] next = nfa.move(current.words, symbol);
+                    if (next != null) {
+                        row[symbol] = table.intern(closures.closure(new StateSet(next)));
+                    }
+                }
+                successors[i] = row;
+            }
+        }
+    }
+    
+    private int intern(StateSet set) {
+        Integer id = ids.get(set);
+        if (id != null) {
+            return id;
+        }
+        int newId = subsets.size();
+        subsets.add(set);
+        ids.put(set, newId);
+        return newId;
+    }
+    
+    private void ensureTransitionCapacity(int size) {
+        if (size > transitions.length) {
+            transitions = Arrays.copyOf(transitions, Math.max(size, transitions.length * 2));
+        }
+    }
+    
+    /** One past the highest state id; after an in-place update not every id below is live. */
+    int stateCount() {
+        return subsets.size();
+    }
+    
+    boolean isLive(int state) {
+        return !retired.get(state);
+    }
+    
+    int startState() {
+        return start;
+    }
+    
+    StateSet subset(int id) {
+        return subsets.get(id);
+    }
+    
+    EpsilonClosureTable closures() {
+        return closures;
+    }
+    
+    int transition(int state, int symbol) {
+        return transitions[state * nfa.symbolCount() + symbol];
+    }
+    
+    /** The id the same live subset had in the construction {@link #runIncremental} reused, or -1. */
+    int previousId(int state) {
+        return previousIds == null ? -1 : previousIds[state];
+    }
+    
+    /** Whether {@link #runIncremental} took this state's whole row from the previous construction. */
+    boolean rowCopied(int state) {
+        return copiedRows.get(state);
+    }
+    
+    int copiedRowCount() {
+        return copiedRows.cardinality();
+    }
+    
+    /** Whether the NFA {@link #runIncremental} started from had the same final states. */
+    boolean sameFinalStates() {
+        return sameFinalStates;
+    }
+    
+    /** Adds the counters of the last run and the sizes of its live subsets to {@code run}. */
+    void report(ConversionMetrics.Run run) {
+        run.subsetsExplored += expanded;
+        run.moveCalls += moves;
+        run.closureCalls += closures.getHits() + closures.getMisses();
+        run.closureCacheHits += closures.getHits();
+        run.reusedStates += copiedRows.cardinality();
+        for (int id = 0; id < subsets.size(); id++) {
+            if (!retired.get(id)) {
+                run.subset(subsets.get(id).cardinality());
+            }
+        }
+    }
+}
\ No newline at end of file
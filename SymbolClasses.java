@@ -0,0 +1,233 @@
+import java.util.*;
+
+/**
+ * Partition of an NFA's alphabet into classes of symbols that label exactly
+ * the same transitions from every state, so the DFA cannot tell them apart
+ * either. Each class is represented by its first symbol in sorted order, and
+ * {@link #reduced} is the NFA over the representatives alone: converting it
+ * does one move and closure per class instead of per symbol. Classes are
+ * numbered in order of their representatives, so a reduced symbol id is
+ * also a class id.
+ */
+final class SymbolClasses {
+    final String[] symbols;
+    final int[] classOf;
+    final IndexedNFA reduced;
+    private final Map<String, Integer> symbolIds;
+    
+    private SymbolClasses(String[] symbols, int[] classOf, IndexedNFA reduced) {
+        this.symbols = symbols;
+        this.classOf = classOf;
+        this.reduced = reduced;
+        this.symbolIds = new HashMap<>(symbols.length * 2);
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            symbolIds.put(symbols[symbol], symbol);
+        }
+    }
+    
+    /**
+     * Classes of the parser's alphabet, found from its edge list, and the
+     * reduced NFA built straight from the parser, so the full per-symbol
+     * table is never allocated.
+     */
+    static SymbolClasses of(NFAParser parser) {
+        String[] symbols = IndexedNFA.alphabet(parser);
+        SymbolTable symbolTable = parser.symbolTable();
+        int[] index = new int[symbolTable.size()];
+        Arrays.fill(index, -1);
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            index[symbolTable.find(symbols[symbol])] = symbol;
+        }
+        int edges = parser.edgeCount();
+        int[] counts = new int[symbols.length];
+        for (int edge = 0; edge < edges; edge++) {
+            int symbol = index[parser.edgeSymbol(edge)];
+            if (symbol >= 0) counts[symbol]++;
+        }
+        long[][] columns = new long[symbols.length][];
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            columns[symbol] = new long[counts[symbol]];
+        }
+        Arrays.fill(counts, 0);
+        for (int edge = 0; edge < edges; edge++) {
+            int symbol = index[parser.edgeSymbol(edge)];
+            if (symbol >= 0) {
+                columns[symbol][counts[symbol]++] = (long) parser.edgeFrom(edge) << 32 | parser.edgeTo(edge);
+            }
+        }
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            columns[symbol] = sortedUnique(columns[symbol]);
+        }
+        
+        int[] classOf = classify(columns);
+        int[] ids = representatives(classOf);
+        String[] representatives = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            representatives[i] = symbols[ids[i]];
+        }
+        return new SymbolClasses(symbols, classOf, IndexedNFA.from(parser, representatives));
+    }
+    
+    /** Classes of an NFA that already has its full table, as a {@link NFASnapshot} does. */
+    static SymbolClasses of(IndexedNFA nfa) {
+        int symbolCount = nfa.symbolCount();
+        long[][] columns = new long[symbolCount][];
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            int count = 0;
+            for (int state = 0; state < nfa.stateCount(); state++) {
+                count += nfa.delta[state][symbol].length;
+            }
+            long[] column = new long[count];
+            int next = 0;
+            for (int state = 0; state < nfa.stateCount(); state++) {
+                for (int target : nfa.delta[state][symbol]) {
+                    column[next++] = (long) state << 32 | target;
+                }
+            }
+            columns[symbol] = column;
+        }
+        int[] classOf = classify(columns);
+        int[] representatives = representatives(classOf);
+        IndexedNFA reduced = representatives.length == symbolCount ? nfa : nfa.restrict(representatives);
+        return new SymbolClasses(nfa.symbols, classOf, reduced);
+    }
+    
+    /**
+     * Numbers symbols with equal columns of (from, to) pairs alike, in order
+     * of first appearance. Columns are grouped by hash and then compared in full.
+     */
+    private static int[] classify(long[][] columns) {
+        int[] classOf = new int[columns.length];
+        List<long[]> classColumns = new ArrayList<>();
+        Map<Integer, List<Integer>> byHash = new HashMap<>();
+        for (int symbol = 0; symbol < columns.length; symbol++) {
+            List<Integer> candidates = byHash.computeIfAbsent(Arrays.hashCode(columns[symbol]), h -> new ArrayList<>(1));
+            int found = -1;
+            for (int candidate : candidates) {
+                if (Arrays.equals(classColumns.get(candidate), columns[symbol])) {
+                    found = candidate;
+                    break;
+                }
+            }
+            if (found < 0) {
+                found = classColumns.size();
+                classColumns.add(columns[symbol]);
+                candidates.add(found);
+            }
+            classOf[symbol] = found;
+        }
+        return classOf;
+    }
+    
+    /** The first symbol of every class, by class. */
+    private static int[] representatives(int[] classOf) {
+        int classCount = 0;
+        for (int symbolClass : classOf) {
+            classCount = Math.max(classCount, symbolClass + 1);
+        }
+        int[] representatives = new int[classCount];
+        for (int symbol = classOf.length - 1; symbol >= 0; symbol--) {
+            representatives[classOf[symbol]] = symbol;
+        }
+        return representatives;
+    }
+    
+    private static long[] sortedUnique(long[] pairs) {
+        if (pairs.length < 2) {
+            return pairs;
+        }
+        Arrays.sort(pairs);
+        int size = 1;
+        for (int i = 1; i < pairs.length; i++) {
+            if (pairs[i] != pairs[size - 1]) {
+                pairs[size++] = pairs[i];
+            }
+        }
+        return size == pairs.length ? pairs : Arrays.copyOf(pairs, size);
+    }
+    
+    int classCount() {
+        return reduced.symbolCount();
+    }
+    
+    /** The class of the symbol named {@code symbol}, or -1 if it is not in the alphabet. */
+    int classOf(Object symbol) {
+        Integer id = symbolIds.get(symbol);
+        return id == null ? -1 : classOf[id];
+    }
+    
+    /** Whether {@code other} splits the same alphabet into the same classes. */
+    boolean samePartition(SymbolClasses other) {
+        return Arrays.equals(symbols, other.symbols) && Arrays.equals(classOf, other.classOf);
+    }
+    
+    /**
+     * A DFA row as a read-only map from every symbol to the target of its
+     * class, holding one entry per class rather than per symbol. Entries
+     * iterate in sorted symbol order.
+     */
+    Map<String, String> row(String[] targets) {
+        return new Row(targets);
+    }
+    
+    private final class Row extends AbstractMap<String, String> {
+        private final String[] targets;
+        
+        Row(String[] targets) {
+            this.targets = targets;
+        }
+        
+        @Override
+        public String get(Object symbol) {
+            int symbolClass = classOf(symbol);
+            return symbolClass < 0 ? null : targets[symbolClass];
+        }
+        
+        @Override
+        public boolean containsKey(Object symbol) {
+            return symbolIds.containsKey(symbol);
+        }
+        
+        @Override
+        public boolean containsValue(Object target) {
+            for (String candidate : targets) {
+                if (candidate.equals(target)) return true;
+            }
+            return false;
+        }
+        
+        @Override
+        public int size() {
+            return symbols.length;
+        }
+        
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<Map.Entry<String, String>>() {
+                        private int next;
+                        
+                        @Override
+                        public boolean hasNext() {
+                            return next < symbols.length;
+                        }
+                        
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (next == symbols.length) throw new NoSuchElementException();
+                            int symbol = next++;
+                            return new AbstractMap.SimpleImmutableEntry<>(symbols[symbol], targets[classOf[symbol]]);
+                        }
+                    };
+                }
+                
+                @Override
+                public int size() {
+                    return symbols.length;
+                }
+            };
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,14 @@
+/** Runs the operations of {@link NFABenchmark} for the JMH benchmarks in package {@code jmh}. */
+public class JmhWorkload implements jmh.Workload {
+    private NFABenchmark.Operation operation;
+    
+    @Override
+    public void prepare(String stage, String family, int size) throws Exception {
+        operation = NFABenchmark.prepare(stage, NFABenchmark.generate(family, size));
+    }
+    
+    @Override
+    public Object run() throws Exception {
+        return operation.run();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH versions of the {@code NFABenchmark} stages over the {@code NFAGenerator}
+ * families, one state class per family so every family runs at the sizes it
+ * can convert: "nth" has a DFA of 2^n states and "ranges" either dies out or
+ * blows up past a few hundred states. "render" and "repaint" run headless.
+ *
+ * <pre>
+ * mvn -Pjmh package
+ * java -jar target/benchmarks.jar                       # everything
+ * java -jar target/benchmarks.jar ConversionBenchmarks.random -p stage=convert,edit
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ConversionBenchmarks {
+    
+    @State(Scope.Thread)
+    public static class RandomNFA {
+        @Param({"parse", "convert", "edit", "output", "render", "repaint", "match"})
+        String stage;
+        @Param({"10", "100", "1000", "10000"})
+        int size;
+        Workload workload;
+        
+        @Setup(Level.Trial)
+        public void prepare() throws Exception {
+            workload = Workload.create();
+            workload.prepare(stage, "random", size);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class NthNFA {
+        @Param({"parse", "convert", "edit", "output", "match"})
+        String stage;
+        @Param({"4", "8", "12", "16"})
+        int size;
+        Workload workload;
+        
+        @Setup(Level.Trial)
+        public void prepare() throws Exception {
+            workload = Workload.create();
+            workload.prepare(stage, "nth", size);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class ChainNFA {
+        @Param({"parse", "convert", "edit", "output", "match"})
+        String stage;
+        @Param({"10", "100", "1000", "10000"})
+        int size;
+        Workload workload;
+        
+        @Setup(Level.Trial)
+        public void prepare() throws Exception {
+            workload = Workload.create();
+            workload.prepare(stage, "chain", size);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class RangesNFA {
+        @Param({"parse", "convert", "edit", "output"})
+        String stage;
+        @Param({"100", "200", "300"})
+        int size;
+        Workload workload;
+        
+        @Setup(Level.Trial)
+        public void prepare() throws Exception {
+            workload = Workload.create();
+            workload.prepare(stage, "ranges", size);
+        }
+    }
+    
+    // Returning the result hands it to JMH's blackhole, so the work cannot be optimized away
+    
+    @Benchmark
+    public Object random(RandomNFA state) throws Exception {
+        return state.workload.run();
+    }
+    
+    @Benchmark
+    public Object nth(NthNFA state) throws Exception {
+        return state.workload.run();
+    }
+    
+    @Benchmark
+    public Object chain(ChainNFA state) throws Exception {
+        return state.workload.run();
+    }
+    
+    @Benchmark
+    public Object ranges(RangesNFA state) throws Exception {
+        return state.workload.run();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,18 @@
+package jmh;
+
+/**
+ * One operation of {@code NFABenchmark}, prepared on a generated NFA. JMH
+ * will not run benchmarks in the default package, where the automaton
+ * classes live, so the benchmarks here reach them only through this
+ * interface, implemented by the default-package {@code JmhWorkload}.
+ */
+public interface Workload {
+    /** Generates an NFA of {@code family} with {@code size} states and prepares {@code stage} on it. */
+    void prepare(String stage, String family, int size) throws Exception;
+    
+    Object run() throws Exception;
+    
+    static Workload create() throws ReflectiveOperationException {
+        return (Workload) Class.forName("JmhWorkload").getDeclaredConstructor().newInstance();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,185 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trips through {@link AutomatonCodec}, compared through the getters
+ * of {@link NFAParser} and {@link NFAToDFAConverter}, and the checks that
+ * reject damaged or foreign data.
+ */
+public class AutomatonCodecTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private static void assertSameNFA(String message, NFAParser expected, NFAParser actual) {
+        assertEquals(message + ": states", expected.getStates(), actual.getStates());
+        assertEquals(message + ": alphabet", expected.getAlphabet(), actual.getAlphabet());
+        assertEquals(message + ": start state", expected.getStartState(), actual.getStartState());
+        assertEquals(message + ": final states", expected.getFinalStates(), actual.getFinalStates());
+        assertEquals(message + ": transitions", expected.getNFATransitions(), actual.getNFATransitions());
+    }
+    
+    private static NFAParser parse(String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        return parser;
+    }
+    
+    @Test
+    public void generatedNFAsAndTheirDFAsRoundTrip() throws IOException {
+        Path file = folder.newFile("automaton.bin").toPath();
+        for (long seed = 0; seed < 20; seed++) {
+            String[] definitions = {
+                NFAGenerator.random(1 + (int) seed * 3, 3, 2.0, 0.2, seed),
+                NFAGenerator.epsilonChain(5 + (int) seed, 2, seed),
+                NFAGenerator.ranges(10, 3.0, 0.05, seed),
+                NFAGenerator.nthFromEnd(1 + (int) (seed % 8))
+            };
+            for (String definition : definitions) {
+                NFAParser parser = parse(definition);
+                AutomatonCodec.writeNFA(parser, file);
+                NFAParser decoded = AutomatonCodec.readNFA(file);
+                assertSameNFA("seed " + seed, parser, decoded);
+                
+                NFAToDFAConverter converter = new NFAToDFAConverter();
+                converter.convert(decoded);
+                AutomatonCodec.writeDFA(converter, file);
+                ConverterEngineTest.assertSameDFA("seed " + seed, converter, AutomatonCodec.readDFA(file));
+            }
+        }
+    }
+    
+    @Test
+    public void nonAsciiNamesAndMissingStartStateRoundTrip() throws IOException {
+        NFAParser parser = parse("States: état,ζ,q2\nAlphabet: ä,b\nTransition: état,ä,ζ\nTransition: ζ,e,q2\n"
+            + "Transition: q2,b,état\nFinal: q2\n");
+        NFAParser decoded = AutomatonCodec.decodeNFA(ByteBuffer.wrap(AutomatonCodec.encodeNFA(parser)));
+        assertSameNFA("no start", parser, decoded);
+        assertNull(decoded.getStartState());
+    }
+    
+    @Test
+    public void decodesFromDirectBuffers() throws IOException {
+        NFAParser parser = parse(NFAGenerator.random(20, 2, 1.5, 0.1, 3));
+        byte[] encoded = AutomatonCodec.encodeNFA(parser);
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+        direct.put(encoded).flip();
+        assertSameNFA("direct", parser, AutomatonCodec.decodeNFA(direct));
+    }
+    
+    @Test
+    public void everySingleBitFlipIsRejected() {
+        NFAParser parser = parse(NFAGenerator.random(8, 2, 2.0, 0.2, 5));
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        byte[] nfa = AutomatonCodec.encodeNFA(parser);
+        byte[] dfa = AutomatonCodec.encodeDFA(converter);
+        Random random = new Random(11);
+        for (int trial = 0; trial < 200; trial++) {
+            byte[] damaged = (trial % 2 == 0 ? nfa : dfa).clone();
+            damaged[random.nextInt(damaged.length)] ^= 1 << random.nextInt(8);
+            try {
+                if (trial % 2 == 0) {
+                    AutomatonCodec.decodeNFA(ByteBuffer.wrap(damaged));
+                } else {
+                    AutomatonCodec.decodeDFA(ByteBuffer.wrap(damaged));
+                }
+                fail("damaged data decoded in trial " + trial);
+            } catch (IOException expected) {
+                // Magic, version, kind or checksum
+            }
+        }
+    }
+    
+    @Test
+    public void rejectsBadMagic() {
+        byte[] data = AutomatonCodec.encodeNFA(parse("Start: q0\nFinal: q0\n"));
+        data[0] = 'X';
+        assertRejected("Not an automaton file", data, true);
+        assertRejected("Not an automaton file", new byte[3], true);
+    }
+    
+    @Test
+    public void rejectsOtherVersionsAndKinds() {
+        NFAParser parser = parse("Start: q0\nFinal: q0\n");
+        byte[] data = AutomatonCodec.encodeNFA(parser);
+        data[4] = 2;
+        assertRejected("Unsupported automaton format version 2", data, true);
+        assertRejected("Expected a DFA file", AutomatonCodec.encodeNFA(parser), false);
+    }
+    
+    @Test
+    public void rejectsChecksumMismatch() {
+        byte[] data = AutomatonCodec.encodeNFA(parse("Alphabet: a\nTransition: q0,a,q0\nStart: q0\nFinal: q0\n"));
+        data[data.length - 1] ^= 0x20;
+        assertRejected("Automaton file checksum mismatch", data, true);
+    }
+    
+    // The cases below have a valid checksum, so decoding reaches the payload checks
+    
+    @Test
+    public void rejectsTruncatedVarint() {
+        // State count with its continuation bit set and nothing after it
+        assertRejected("Corrupt automaton data: truncated", withChecksum(1, 0x80), true);
+    }
+    
+    @Test
+    public void rejectsOverlongVarint() {
+        assertRejected("Corrupt automaton data: varint too long", withChecksum(1, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01), true);
+    }
+    
+    @Test
+    public void rejectsCountsLargerThanTheData() {
+        assertRejected("Corrupt automaton data: count 100", withChecksum(1, 100), true);
+    }
+    
+    @Test
+    public void rejectsOutOfRangeIds() {
+        // One state "q", no symbols, then a declared state id of 5
+        assertRejected("Corrupt automaton data: id 5", withChecksum(1, 1, 1, 'q', 0, 1, 5), true);
+        // One state, no symbols, nothing declared or final, start id 0 (none), one edge from state 3
+        assertRejected("Corrupt automaton data: state id 3", withChecksum(1, 1, 1, 'q', 0, 0, 0, 0, 0, 1, 6, 0, 0), true);
+        // An edge on symbol 1 of an empty alphabet
+        assertRejected("Corrupt automaton data: id 1", withChecksum(1, 1, 1, 'q', 0, 0, 0, 0, 0, 1, 0, 1, 0), true);
+        // A DFA with one state "A" whose start id is 5
+        assertRejected("Corrupt automaton data: id 5", withChecksum(2, 1, 1, 'A', 0, 5), false);
+        // A DFA row pointing at state 2 of 1
+        assertRejected("Corrupt automaton data: id 3", withChecksum(2, 1, 1, 'A', 1, 1, 'a', 1, 0, 3), false);
+    }
+    
+    private static void assertRejected(String message, byte[] data, boolean nfa) {
+        try {
+            if (nfa) {
+                AutomatonCodec.decodeNFA(ByteBuffer.wrap(data));
+            } else {
+                AutomatonCodec.decodeDFA(ByteBuffer.wrap(data));
+            }
+            fail("Expected rejection: " + message);
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+    
+    /** A file of the given kind (1 = NFA, 2 = DFA) holding {@code payload} and a correct checksum. */
+    private static byte[] withChecksum(int kind, int... payload) {
+        byte[] data = new byte[6 + payload.length + 4];
+        System.arraycopy("NFAB".getBytes(StandardCharsets.US_ASCII), 0, data, 0, 4);
+        data[4] = 1;
+        data[5] = (byte) kind;
+        for (int i = 0; i < payload.length; i++) {
+            data[6 + i] = (byte) payload[i];
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        ByteBuffer.wrap(data, data.length - 4, 4).putInt((int) crc.getValue());
+        return data;
+    }
+}
\ No newline at end of file
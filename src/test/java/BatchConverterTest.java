@@ -0,0 +1,142 @@
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The batch command line over directories of good and bad definitions:
+ * exit status 0 when everything converts, 1 when a definition fails or is
+ * aborted and 2 for a bad command line, text and JSON output, and failures
+ * confined to their own definition.
+ */
+public class BatchConverterTest {
+    private static final String GOOD = "States: q0,q1\nAlphabet: a,b\nTransition: q0,a,q1\nTransition: q1,b,q0\n"
+        + "Start: q0\nFinal: q1\n";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    private PrintStream originalErr;
+    
+    @Before
+    public void captureStandardError() {
+        originalErr = System.err;
+        System.setErr(new PrintStream(errors, true));
+    }
+    
+    @After
+    public void restoreStandardError() {
+        System.setErr(originalErr);
+    }
+    
+    private Path directory(String... namesAndDefinitions) throws IOException {
+        Path directory = folder.newFolder().toPath();
+        for (int i = 0; i < namesAndDefinitions.length; i += 2) {
+            Path file = directory.resolve(namesAndDefinitions[i]);
+            Files.createDirectories(file.getParent());
+            Files.write(file, namesAndDefinitions[i + 1].getBytes(StandardCharsets.UTF_8));
+        }
+        return directory;
+    }
+    
+    private String run(int expectedStatus, String... args) throws IOException {
+        Path out = folder.newFile().toPath();
+        List<String> command = new ArrayList<>(Arrays.asList(args));
+        command.add("--out");
+        command.add(out.toString());
+        assertEquals(errors.toString(), expectedStatus, BatchConverter.run(command.toArray(new String[0])));
+        return new String(Files.readAllBytes(out), StandardCharsets.UTF_8);
+    }
+    
+    private static String deeplyNestedRegex(int depth) {
+        StringBuilder regex = new StringBuilder("Regex: ");
+        for (int i = 0; i < depth; i++) regex.append('(');
+        regex.append('a');
+        for (int i = 0; i < depth; i++) regex.append(')');
+        return regex.append('\n').toString();
+    }
+    
+    @Test
+    public void allGoodDefinitionsExitWithZero() throws IOException {
+        Path directory = directory("one.nfa", GOOD, "sub/two.nfa", NFAGenerator.nthFromEnd(3));
+        String output = run(0, "--batch", directory.toString(), "--threads", "2");
+        assertTrue(output, output.contains("== one.nfa: 3 DFA states"));
+        assertTrue(output, output.contains("== sub" + File.separator + "two.nfa: 8 DFA states"));
+        assertTrue(output, output.contains("{q0} -- a --> {q1}"));
+        assertTrue(errors.toString(), errors.toString().startsWith("Converted 2 of 2 definitions (0 failed, 0 aborted)"));
+    }
+    
+    @Test
+    public void failuresAreConfinedToTheirDefinition() throws IOException {
+        Path directory = directory(
+            "a-good.nfa", GOOD,
+            "b-no-start.nfa", "States: q0\nAlphabet: a\nTransition: q0,a,q0\nFinal: q0\n",
+            "c-bad-line.nfa", "States: q0\nTransition: q0,a\nStart: q0\n",
+            "d-deep.nfa", deeplyNestedRegex(200_000),
+            "e-aborted.nfa", NFAGenerator.nthFromEnd(10),
+            "f-good.nfa", NFAGenerator.nthFromEnd(2));
+        String output = run(1, "--batch", directory.toString(), "--threads", "3", "--max-states", "100");
+        assertTrue(output, output.contains("== a-good.nfa: 3 DFA states"));
+        assertTrue(output, output.contains("== b-no-start.nfa: error after "));
+        assertTrue(output, output.contains("Start state is not defined"));
+        assertTrue(output, output.contains("== c-bad-line.nfa: error after "));
+        assertTrue(output, output.contains("== d-deep.nfa: error after "));
+        assertTrue(output, output.contains("java.lang.StackOverflowError"));
+        assertTrue(output, output.contains("== e-aborted.nfa: aborted after "));
+        assertTrue(output, output.contains("== f-good.nfa: 4 DFA states"));
+        assertTrue(errors.toString(), errors.toString().startsWith("Converted 2 of 6 definitions (3 failed, 1 aborted)"));
+    }
+    
+    @Test
+    public void jsonWritesOneObjectPerDefinition() throws IOException {
+        Path directory = directory("good.nfa", GOOD, "bad.nfa", "States: q0\nTransition: q0,a\nStart: q0\n");
+        String[] lines = run(1, "--batch", directory.toString(), "--format", "json", "--minimize").split("\n");
+        assertEquals(3, lines.length);
+        Arrays.sort(lines, 0, 2);
+        assertTrue(lines[0], lines[0].startsWith("{\"file\":\"bad.nfa\",\"status\":\"error\",\"message\":"));
+        assertTrue(lines[1], lines[1].startsWith("{\"file\":\"good.nfa\",\"status\":\"ok\","));
+        assertTrue(lines[1], lines[1].contains(",\"dfaStates\":3,"));
+        assertTrue(lines[1], lines[1].endsWith(",\"alphabet\":[\"a\",\"b\"],\"start\":\"{q0}\",\"final\":[\"{q1}\"],"
+            + "\"transitions\":{\"{q0}\":{\"a\":\"{q1}\",\"b\":\"∅\"},\"{q1}\":{\"a\":\"∅\",\"b\":\"{q0}\"},"
+            + "\"∅\":{\"a\":\"∅\",\"b\":\"∅\"}}}}"));
+        assertTrue(lines[2], lines[2].startsWith("{\"summary\":{\"definitions\":2,\"converted\":1,\"failed\":1,"
+            + "\"aborted\":0,\"dfaStates\":3,"));
+    }
+    
+    @Test
+    public void badCommandLinesExitWithTwo() throws IOException {
+        assertEquals(2, BatchConverter.run(new String[] {"--threads", "2"}));
+        assertTrue(errors.toString(), errors.toString().startsWith("--batch <dir|-> is required"));
+        assertEquals(2, BatchConverter.run(new String[] {"--batch", "dir", "--bogus"}));
+        assertTrue(errors.toString(), errors.toString().contains("Unknown option: --bogus"));
+        assertEquals(2, BatchConverter.run(new String[] {"--batch", "dir", "--format", "xml"}));
+        assertEquals(2, BatchConverter.run(new String[] {"--batch", "dir", "--threads", "0"}));
+        assertEquals(2, BatchConverter.run(new String[] {"--batch"}));
+        assertTrue(errors.toString(), errors.toString().contains("Missing value for --batch"));
+        // A directory that does not exist fails the run rather than the command line
+        assertEquals(1, BatchConverter.run(new String[] {"--batch", folder.getRoot() + "/missing"}));
+    }
+    
+    @Test
+    public void streamsAreSplitOnSeparatorLines() throws IOException {
+        BatchConverter batch = new BatchConverter();
+        batch.setParallelism(2);
+        StringWriter out = new StringWriter();
+        BatchConverter.Summary summary = batch.convertStream(new StringReader(
+            "---\n" + GOOD + "---\n\n---\nStates: q0\n---\n" + NFAGenerator.nthFromEnd(2)), "in", out);
+        assertEquals(3, summary.getDefinitions());
+        assertEquals(2, summary.getConverted());
+        assertEquals(1, summary.getFailed());
+        assertEquals(7, summary.getDFAStates());
+        assertTrue(out.toString(), out.toString().contains("== in#2: error after "));
+    }
+}
\ No newline at end of file
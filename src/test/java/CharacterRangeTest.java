@@ -0,0 +1,116 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.Test;
+
+/**
+ * Character ranges such as {@code a-z} in Alphabet and Transition lines, the
+ * symbol names that look like ranges but are not, and the read-only DFA rows
+ * the bitset engine builds from symbol classes.
+ */
+public class CharacterRangeTest {
+    
+    private static NFAParser parse(String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        return parser;
+    }
+    
+    private static Set<String> symbols(char first, char last) {
+        Set<String> symbols = new HashSet<>();
+        for (char c = first; c <= last; c++) {
+            symbols.add(String.valueOf(c));
+        }
+        return symbols;
+    }
+    
+    @Test
+    public void rangesExpandToEverySymbolInBetween() {
+        NFAParser parser = parse("States: q0,q1\nAlphabet: 0-9, a-c ,_\nTransition: q0, a-c ,q1\n"
+            + "Transition: q1,0-9,q1\nStart: q0\nFinal: q1\n");
+        Set<String> alphabet = symbols('0', '9');
+        alphabet.addAll(symbols('a', 'c'));
+        alphabet.add("_");
+        assertEquals(alphabet, parser.getAlphabet());
+        for (char c = 'a'; c <= 'c'; c++) {
+            assertEquals(Collections.singleton("q1"), parser.getNFATransitions().get("q0," + c));
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            assertEquals(Collections.singleton("q1"), parser.getNFATransitions().get("q1," + c));
+        }
+        assertEquals(13, parser.getNFATransitions().size());
+    }
+    
+    @Test
+    public void everyCharacterOfARangeIsLiteral() {
+        // d-f holds e, which on its own would be an epsilon edge
+        NFAParser parser = parse("States: q0,q1\nTransition: q0,d-f,q1\nTransition: q0,e,q1\nStart: q0\nFinal: q1\n");
+        for (char c = 'd'; c <= 'f'; c++) {
+            assertEquals(Collections.singleton("q1"), parser.getNFATransitions().get("q0," + c));
+        }
+        assertEquals(Collections.singleton("q1"), parser.getNFATransitions().get("q0,ε"));
+        
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parse("Alphabet: d-f\nStates: q0,q1\nTransition: q0,d-f,q1\nStart: q0\nFinal: q1\n"));
+        assertEquals("{q1}", converter.getDFATransitions().get("{q0}").get("e"));
+        assertEquals(Collections.singleton("{q1}"), converter.getDFAFinalStates());
+    }
+    
+    @Test
+    public void namesThatAreNotRangesStaySymbols() {
+        NFAParser parser = parse("States: q0,q1\nAlphabet: z-a, a-a, -, ab-c, a-bc, --\nTransition: q0,z-a,q1\n"
+            + "Transition: q0,a--,q1\nStart: q0\nFinal: q1\n");
+        assertEquals(new HashSet<>(Arrays.asList("z-a", "a-a", "-", "ab-c", "a-bc", "--")), parser.getAlphabet());
+        assertEquals(Collections.singleton("q1"), parser.getNFATransitions().get("q0,z-a"));
+        assertEquals(Collections.singleton("q1"), parser.getNFATransitions().get("q0,a--"));
+    }
+    
+    @Test
+    public void rangedTransitionsStillNeedThreeFields() {
+        for (String transition : new String[] {"q0,a-z", "q0,a-z,q1,q2", "a-z"}) {
+            try {
+                parse("States: q0,q1\nTransition: " + transition + "\nStart: q0\n");
+                fail(transition);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid transition format at line 2: "));
+                assertTrue(e.getMessage(), e.getMessage().endsWith(transition));
+            }
+        }
+    }
+    
+    @Test
+    public void bitsetRowsAreReadOnlyViewsOfTheLegacyRows() {
+        NFAParser parser = parse("States: q0,q1,q2\nAlphabet: a-z\nTransition: q0,a-m,q1\nTransition: q0,n-y,q2\n"
+            + "Transition: q1,x,q2\nStart: q0\nFinal: q2\n");
+        NFAToDFAConverter bitset = new NFAToDFAConverter();
+        bitset.convert(parser);
+        NFAToDFAConverter legacy = new NFAToDFAConverter();
+        legacy.setEngine(NFAToDFAConverter.Engine.LEGACY);
+        legacy.convert(parser);
+        ConverterEngineTest.assertSameDFA("ranges", legacy, bitset);
+        
+        Map<String, String> row = bitset.getDFATransitions().get("{q0}");
+        assertEquals(26, row.size());
+        assertEquals("{q1}", row.get("c"));
+        assertEquals("{q2}", row.get("n"));
+        assertEquals(NFAToDFAConverter.DEAD_STATE, row.get("z"));
+        assertNull(row.get("0"));
+        assertFalse(row.containsKey("0"));
+        assertEquals(legacy.getDFATransitions().get("{q0}").hashCode(), row.hashCode());
+        try {
+            row.put("a", "{q2}");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // Documented on getDFATransitions
+        }
+        Map<String, String> copy = new HashMap<>(row);
+        copy.put("a", "{q2}");
+        assertEquals("{q2}", copy.get("a"));
+        assertEquals("{q1}", row.get("a"));
+        
+        // Rows list their symbols in order
+        assertEquals(new ArrayList<>(new TreeSet<>(symbols('a', 'z'))), new ArrayList<>(row.keySet()));
+        // The legacy engine keeps plain maps
+        legacy.getDFATransitions().get("{q0}").put("a", "{q2}");
+    }
+}
\ No newline at end of file
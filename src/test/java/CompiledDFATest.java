@@ -0,0 +1,115 @@
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.junit.Test;
+
+/**
+ * The table-driven matcher against a walk of the converter's map-based DFA.
+ * Inputs mix alphabet symbols with bytes and characters outside it, which
+ * must land in the shared dead row, across every input form.
+ */
+public class CompiledDFATest {
+    
+    private static NFAToDFAConverter convert(String definition, NFAParser parser) {
+        parser.parse(definition);
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        return converter;
+    }
+    
+    private static boolean expected(NFAToDFAConverter converter, String input) {
+        return DFAMinimizerTest.accepts(converter.getDFATransitions(), converter.getDFAStartState(),
+            converter.getDFAFinalStates(), input);
+    }
+    
+    private static void assertMatchesLikeMapDFA(String definition, String symbols, long seed) {
+        NFAParser parser = new NFAParser();
+        NFAToDFAConverter converter = convert(definition, parser);
+        CompiledDFA compiled = CompiledDFA.compile(converter, parser.getAlphabet());
+        
+        Random random = new Random(seed);
+        List<String> inputs = new ArrayList<>();
+        int expectedCount = 0;
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int length = random.nextInt(16); length > 0; length--) {
+                // One symbol in twenty is a byte or character the alphabet does not have
+                input.append(random.nextInt(20) > 0 ? symbols.charAt(random.nextInt(symbols.length()))
+                    : "#éĀ∃\0".charAt(random.nextInt(5)));
+            }
+            String text = input.toString();
+            boolean match = expected(converter, text);
+            assertEquals(text, match, compiled.matches(text));
+            if (text.chars().allMatch(c -> c <= 0xFF)) {
+                byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+                assertEquals(text, match, compiled.matches(bytes));
+                assertEquals(text, match, compiled.matches(ByteBuffer.wrap(bytes)));
+                byte[] padded = ("xx" + text + "yy").getBytes(StandardCharsets.ISO_8859_1);
+                assertEquals(text, match, compiled.matches(padded, 2, bytes.length));
+            }
+            inputs.add(text);
+            if (match) expectedCount++;
+        }
+        assertEquals(expectedCount, compiled.countMatches(inputs));
+        boolean[] results = new boolean[inputs.size()];
+        assertEquals(expectedCount, compiled.matchAll(inputs.toArray(new CharSequence[0]), results));
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(inputs.get(i), expected(converter, inputs.get(i)), results[i]);
+        }
+    }
+    
+    @Test
+    public void randomNFAsMatchLikeTheMapDFA() {
+        for (long seed = 0; seed < 30; seed++) {
+            assertMatchesLikeMapDFA(NFAGenerator.random(5 + (int) seed, 3, 2.0, 0.1, seed), "abc", seed);
+        }
+    }
+    
+    @Test
+    public void regexDFAsMatchLikeTheMapDFA() {
+        assertMatchesLikeMapDFA("Regex: (a|b)*abb\n", "ab", 1);
+        assertMatchesLikeMapDFA("Regex: [0-9]+(\\.[0-9]+)?\n", "0123456789.", 2);
+        assertMatchesLikeMapDFA(NFAGenerator.nthFromEnd(6), "ab", 3);
+    }
+    
+    @Test
+    public void bytesOutsideTheAlphabetShareTheDeadRow() {
+        NFAParser parser = new NFAParser();
+        // One looping state never reaches the converter's dead state, so the sink row is the only dead state
+        CompiledDFA compiled = CompiledDFA.compile(convert("States: q0\nAlphabet: a\nTransition: q0,a,q0\nStart: q0\nFinal: q0\n",
+            parser), parser.getAlphabet());
+        assertEquals(2, compiled.getStateCount());
+        assertEquals(2, compiled.getClassCount());
+        assertTrue(compiled.matches(""));
+        assertTrue(compiled.matches("aaaa"));
+        for (int b = 0; b < 256; b++) {
+            if (b == 'a') continue;
+            assertFalse(compiled.matches(new byte[] {'a', (byte) b}));
+            assertEquals(compiled.deadState(), compiled.step(compiled.startState(), b));
+        }
+        assertFalse(compiled.matches("aš"));
+        
+        // Reaching the converter's dead state and stepping on a foreign byte end in the same row
+        compiled = CompiledDFA.compile(convert("Alphabet: a,b\nRegex: ab\n", parser), parser.getAlphabet());
+        assertEquals(4, compiled.getStateCount());
+        int dead = compiled.step(compiled.startState(), 'b');
+        assertEquals(compiled.deadState(), dead);
+        assertEquals(dead, compiled.step(compiled.startState(), 'z'));
+        assertEquals(dead, compiled.step(dead, 'a'));
+        assertFalse(compiled.isAccepting(dead));
+    }
+    
+    @Test
+    public void multiByteSymbolsAreRejected() {
+        NFAParser parser = new NFAParser();
+        NFAToDFAConverter converter = convert("States: q0,q1\nAlphabet: ab\nTransition: q0,ab,q1\nStart: q0\nFinal: q1\n", parser);
+        try {
+            CompiledDFA.compile(converter, parser.getAlphabet());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Compiled matcher needs single-byte symbols, got: ab", e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Hits, misses and statistics of {@link ConversionCache}, eviction from the
+ * memory tier by DFA transitions in LRU order, and reloading entries from
+ * the disk tier into a new cache, as after a restart.
+ */
+public class ConversionCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private static NFAParser parse(String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        return parser;
+    }
+    
+    /** Converts through the cache and checks the result against a conversion without it. */
+    private static NFAToDFAConverter convert(ConversionCache cache, String definition) {
+        NFAParser parser = parse(definition);
+        NFAToDFAConverter cached = new NFAToDFAConverter();
+        cache.convert(parser, cached);
+        NFAToDFAConverter direct = new NFAToDFAConverter();
+        direct.convert(parser);
+        ConverterEngineTest.assertSameDFA(definition, direct, cached);
+        assertEquals(direct.getAlphabet(), cached.getAlphabet());
+        return cached;
+    }
+    
+    private static long transitions(String definition) {
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parse(definition));
+        return (long) converter.getDFAStates().size() * Math.max(1, converter.getAlphabet().size());
+    }
+    
+    @Test
+    public void repeatedAndReorderedDefinitionsHit() {
+        ConversionCache cache = new ConversionCache(1_000_000);
+        String definition = "States: q0,q1,q2\nAlphabet: a,b\nTransition: q0,a,q1\nTransition: q1,b,q2\n"
+            + "Transition: q0,e,q2\nStart: q0\nFinal: q2\n";
+        convert(cache, definition);
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getHits());
+        assertEquals(transitions(definition), cache.getCachedTransitions());
+        
+        convert(cache, definition);
+        // Same NFA with lines reordered and extra whitespace
+        convert(cache, "Alphabet: b,a\nStates: q2,q1,q0\nFinal: q2\nTransition: q1,b,q2\n"
+            + "Transition: q0,e,q2\n  Transition: q0,a,q1\nStart: q0\n");
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+        
+        convert(cache, definition.replace("Final: q2", "Final: q1"));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+        
+        cache.clear();
+        assertEquals(0, cache.getCachedTransitions());
+        convert(cache, definition);
+        assertEquals(3, cache.getMisses());
+    }
+    
+    @Test
+    public void memoryTierEvictsLeastRecentlyUsedByTransitions() {
+        String first = NFAGenerator.nthFromEnd(3);
+        String second = NFAGenerator.nthFromEnd(4);
+        String third = NFAGenerator.nthFromEnd(5);
+        long budget = transitions(first) + transitions(second) + transitions(third) - 1;
+        ConversionCache cache = new ConversionCache(budget);
+        
+        convert(cache, first);
+        convert(cache, second);
+        // Touching the first entry makes the second the least recently used
+        convert(cache, first);
+        convert(cache, third);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(transitions(first) + transitions(third), cache.getCachedTransitions());
+        
+        long misses = cache.getMisses();
+        convert(cache, first);
+        convert(cache, third);
+        assertEquals(misses, cache.getMisses());
+        convert(cache, second);
+        assertEquals(misses + 1, cache.getMisses());
+        assertTrue(cache.getCachedTransitions() <= budget);
+    }
+    
+    @Test
+    public void entriesOverTheWholeBudgetAreNotKeptInMemory() {
+        String large = NFAGenerator.nthFromEnd(6);
+        ConversionCache cache = new ConversionCache(transitions(large) - 1);
+        convert(cache, large);
+        convert(cache, large);
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getCachedTransitions());
+        assertEquals(0, cache.getEvictions());
+    }
+    
+    @Test
+    public void diskTierSurvivesARestart() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("cache");
+        String definition = NFAGenerator.random(20, 3, 2.0, 0.1, 4);
+        ConversionCache cache = new ConversionCache(1_000_000);
+        cache.setDiskDirectory(directory);
+        convert(cache, definition);
+        assertEquals(1, cache.getMisses());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.toString().endsWith(".dfa")).count());
+        }
+        
+        ConversionCache restarted = new ConversionCache(1_000_000);
+        restarted.setDiskDirectory(directory);
+        convert(restarted, definition);
+        assertEquals(1, restarted.getDiskHits());
+        assertEquals(0, restarted.getMisses());
+        assertEquals(transitions(definition), restarted.getCachedTransitions());
+        // Loaded into memory, so the next lookup does not go to disk
+        convert(restarted, definition);
+        assertEquals(1, restarted.getHits());
+        assertEquals(1, restarted.getDiskHits());
+        assertEquals(1.0, restarted.getHitRate(), 1e-9);
+    }
+    
+    @Test
+    public void damagedDiskEntriesAreConvertedAgain() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        String definition = NFAGenerator.random(20, 3, 2.0, 0.1, 5);
+        ConversionCache cache = new ConversionCache(1_000_000);
+        cache.setDiskDirectory(directory);
+        convert(cache, definition);
+        Path entry = directory.resolve(ConversionCache.canonicalHash(parse(definition)) + ".dfa");
+        byte[] data = Files.readAllBytes(entry);
+        data[data.length - 1] ^= 1;
+        Files.write(entry, data);
+        
+        ConversionCache restarted = new ConversionCache(1_000_000);
+        restarted.setDiskDirectory(directory);
+        convert(restarted, definition);
+        assertEquals(1, restarted.getDiskErrors());
+        assertEquals(1, restarted.getMisses());
+        
+        // The reconversion rewrote the entry
+        ConversionCache again = new ConversionCache(1_000_000);
+        again.setDiskDirectory(directory);
+        convert(again, definition);
+        assertEquals(1, again.getDiskHits());
+        assertEquals(0, again.getDiskErrors());
+    }
+}
\ No newline at end of file
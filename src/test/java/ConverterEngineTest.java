@@ -0,0 +1,107 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Differential tests of the bitset engine, sequential and parallel, against
+ * the legacy string engine it replaced as the default. Both read the same
+ * parsed NFA and must produce the same states, transitions, start state and
+ * final states, compared as the sets and maps the getters return.
+ */
+public class ConverterEngineTest {
+    
+    static void assertSameDFA(String message, NFAToDFAConverter expected, NFAToDFAConverter actual) {
+        assertEquals(message + ": start state", expected.getDFAStartState(), actual.getDFAStartState());
+        assertEquals(message + ": states", expected.getDFAStates(), actual.getDFAStates());
+        assertEquals(message + ": final states", expected.getDFAFinalStates(), actual.getDFAFinalStates());
+        assertEquals(message + ": transitions", expected.getDFATransitions(), actual.getDFATransitions());
+    }
+    
+    private static void assertEnginesAgree(String message, String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        NFAToDFAConverter legacy = new NFAToDFAConverter();
+        legacy.setEngine(NFAToDFAConverter.Engine.LEGACY);
+        legacy.convert(parser);
+        
+        NFAToDFAConverter bitset = new NFAToDFAConverter();
+        bitset.setEngine(NFAToDFAConverter.Engine.BITSET);
+        bitset.convert(parser);
+        assertSameDFA(message + " (bitset)", legacy, bitset);
+        
+        NFAToDFAConverter parallel = new NFAToDFAConverter();
+        parallel.setEngine(NFAToDFAConverter.Engine.BITSET);
+        parallel.setParallelism(3);
+        parallel.convert(parser);
+        assertSameDFA(message + " (parallel bitset)", legacy, parallel);
+    }
+    
+    @Test
+    public void randomFamily() {
+        for (int size : new int[] {1, 2, 5, 10, 50, 200}) {
+            for (long seed = 0; seed < 10; seed++) {
+                assertEnginesAgree("random " + size + " seed " + seed, NFAGenerator.random(size, 2, 1.5, 0.05, seed));
+            }
+        }
+        // Denser NFAs give thousands of DFA states past a few dozen NFA states
+        for (int size : new int[] {2, 5, 10, 20}) {
+            for (long seed = 0; seed < 10; seed++) {
+                assertEnginesAgree("dense random " + size + " seed " + seed, NFAGenerator.random(size, 3, 3.0, 0.3, seed));
+            }
+        }
+    }
+    
+    @Test
+    public void nthFromEndFamily() {
+        for (int n = 1; n <= 10; n++) {
+            assertEnginesAgree("nth " + n, NFAGenerator.nthFromEnd(n));
+        }
+    }
+    
+    @Test
+    public void epsilonChainFamily() {
+        for (int size : new int[] {1, 10, 100, 300}) {
+            for (long seed = 0; seed < 5; seed++) {
+                assertEnginesAgree("chain " + size + " seed " + seed, NFAGenerator.epsilonChain(size, 2, seed));
+            }
+        }
+    }
+    
+    @Test
+    public void rangesFamily() {
+        for (int size : new int[] {5, 20, 60}) {
+            for (long seed = 0; seed < 5; seed++) {
+                assertEnginesAgree("ranges " + size + " seed " + seed, NFAGenerator.ranges(size, 3.0, 0.05, seed));
+            }
+        }
+    }
+    
+    // Small hand-shaped NFAs: undeclared states, epsilon cycles, symbols without transitions
+    @Test
+    public void randomSmallDefinitions() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 500; trial++) {
+            int states = 1 + random.nextInt(12);
+            int symbols = 1 + random.nextInt(3);
+            StringBuilder definition = new StringBuilder("States: ");
+            for (int i = 0; i < states; i++) {
+                definition.append(i > 0 ? "," : "").append('s').append(i);
+            }
+            definition.append("\nAlphabet: ");
+            for (int i = 0; i < symbols; i++) {
+                definition.append(i > 0 ? "," : "").append((char) ('a' + i));
+            }
+            definition.append('\n');
+            int edges = random.nextInt(30);
+            for (int i = 0; i < edges; i++) {
+                String symbol = random.nextInt(5) == 0 ? "e" : String.valueOf((char) ('a' + random.nextInt(symbols)));
+                definition.append("Transition: s").append(random.nextInt(states + 2)).append(',').append(symbol)
+                    .append(",s").append(random.nextInt(states + 2)).append('\n');
+            }
+            definition.append("Start: s0\nFinal: s").append(random.nextInt(states)).append(",s")
+                .append(random.nextInt(states)).append('\n');
+            assertEnginesAgree("trial " + trial + "\n" + definition, definition.toString());
+        }
+    }
+}
\ No newline at end of file
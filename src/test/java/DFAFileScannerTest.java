@@ -0,0 +1,130 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * File scans with chunk sizes small enough that lines straddle chunk
+ * boundaries, compared with matching the lines one by one. Covers lines
+ * ending in {@code '\r'}, empty lines, files without a final newline and
+ * lines longer than the overlap mapped past a chunk.
+ */
+public class DFAFileScannerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private static CompiledDFA compile(String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        return CompiledDFA.compile(converter, parser.getAlphabet());
+    }
+    
+    /** Offsets of the lines {@code dfa} accepts, one line at a time and without a trailing '\r'. */
+    private static long[] expectedOffsets(CompiledDFA dfa, String content) {
+        List<Long> offsets = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart < content.length()) {
+            int newline = content.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? content.length() : newline;
+            String line = content.substring(lineStart, lineEnd);
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (dfa.matches(line)) {
+                offsets.add((long) lineStart);
+            }
+            lineStart = lineEnd + 1;
+        }
+        long[] result = new long[offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = offsets.get(i);
+        }
+        return result;
+    }
+    
+    private Path write(String content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+    
+    private static void assertScan(String message, CompiledDFA dfa, Path file, String content, long chunkSize,
+                                   int parallelism) throws IOException {
+        DFAFileScanner scanner = new DFAFileScanner(dfa);
+        scanner.setChunkSize(chunkSize);
+        scanner.setParallelism(parallelism);
+        scanner.setCollectOffsets(true);
+        DFAFileScanner.Result result = scanner.scan(file);
+        long[] expected = expectedOffsets(dfa, content);
+        assertArrayEquals(message, expected, result.getOffsets());
+        assertEquals(message, expected.length, result.getMatchingLines());
+        assertEquals(message, content.length(), result.getBytes());
+    }
+    
+    @Test
+    public void linesStraddlingChunkBoundariesAreCountedOnce() throws IOException {
+        CompiledDFA dfa = compile("Regex: (a|b)*abb|\n");
+        Random random = new Random(11);
+        for (int trial = 0; trial < 40; trial++) {
+            StringBuilder content = new StringBuilder();
+            for (int lines = random.nextInt(30); lines > 0; lines--) {
+                for (int length = random.nextInt(12); length > 0; length--) {
+                    content.append("aabbx".charAt(random.nextInt(5)));
+                }
+                if (random.nextInt(4) == 0) content.append('\r');
+                if (random.nextInt(8) == 0) content.append("abb");
+                content.append('\n');
+            }
+            if (random.nextBoolean()) content.append("babb");
+            Path file = write(content.toString());
+            for (long chunkSize : new long[] {1, 2, 3, 5, 7, 16, 64, 1 << 20}) {
+                for (int parallelism : new int[] {1, 4}) {
+                    assertScan("trial " + trial + " chunk " + chunkSize + " threads " + parallelism,
+                        dfa, file, content.toString(), chunkSize, parallelism);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void carriageReturnsAndEmptyLines() throws IOException {
+        CompiledDFA dfa = compile("Regex: ab|\n");
+        String content = "ab\r\n\r\n\nab\r\r\nab\nabab\n\rab\nab";
+        Path file = write(content);
+        // Lines "ab\r", "\r", "", "ab" and the unterminated "ab" match; "ab\r\r", "abab" and "\rab" do not
+        assertArrayEquals(new long[] {0, 4, 6, 12, 24}, expectedOffsets(dfa, content));
+        for (long chunkSize = 1; chunkSize <= content.length(); chunkSize++) {
+            assertScan("chunk " + chunkSize, dfa, file, content, chunkSize, 3);
+        }
+        
+        Path empty = write("");
+        assertScan("empty file", dfa, empty, "", 4, 2);
+    }
+    
+    @Test
+    public void linesLongerThanTheOverlapGrowTheMapping() throws IOException {
+        CompiledDFA dfa = compile("Regex: a*b\n");
+        StringBuilder content = new StringBuilder("b\nab\n");
+        for (int i = 0; i < 300_000; i++) {
+            content.append('a');
+        }
+        content.append("b\r\nb\n");
+        for (int i = 0; i < 200_000; i++) {
+            content.append('a');
+        }
+        content.append('c');
+        Path file = write(content.toString());
+        for (long chunkSize : new long[] {1000, 70_000, 1 << 20}) {
+            assertScan("chunk " + chunkSize, dfa, file, content.toString(), chunkSize, 2);
+        }
+        assertArrayEquals(new long[] {0, 2, 5, 300_008}, expectedOffsets(dfa, content.toString()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.Test;
+
+/**
+ * Hopcroft minimization of converted DFAs. Known languages must come out
+ * with their textbook state counts, and every minimized DFA must accept the
+ * same language as the DFA it came from, checked by walking both in step
+ * over every reachable pair of states.
+ */
+public class DFAMinimizerTest {
+    
+    /** Walks a map-based DFA over single-character symbols; a missing row or symbol rejects. */
+    static boolean accepts(Map<String, Map<String, String>> transitions, String start, Set<String> finals,
+                           CharSequence input) {
+        String state = start;
+        for (int i = 0; i < input.length(); i++) {
+            Map<String, String> row = transitions.get(state);
+            state = row == null ? null : row.get(String.valueOf(input.charAt(i)));
+            if (state == null) return false;
+        }
+        return finals.contains(state);
+    }
+    
+    private static void assertEquivalent(String message, NFAToDFAConverter dfa, DFAMinimizer minimized,
+                                         Set<String> alphabet) {
+        assertEquivalent(message, dfa.getDFATransitions(), dfa.getDFAStartState(), dfa.getDFAFinalStates(),
+            minimized.getDFATransitions(), minimized.getDFAStartState(), minimized.getDFAFinalStates(), alphabet);
+    }
+    
+    private static void assertEquivalent(String message,
+                                         Map<String, Map<String, String>> left, String leftStart, Set<String> leftFinals,
+                                         Map<String, Map<String, String>> right, String rightStart, Set<String> rightFinals,
+                                         Set<String> alphabet) {
+        Deque<String[]> queue = new ArrayDeque<>();
+        Set<List<String>> seen = new HashSet<>();
+        queue.add(new String[] {leftStart, rightStart});
+        seen.add(Arrays.asList(leftStart, rightStart));
+        while (!queue.isEmpty()) {
+            String[] pair = queue.poll();
+            assertEquals(message + ": acceptance of " + pair[0] + " and " + pair[1],
+                leftFinals.contains(pair[0]), rightFinals.contains(pair[1]));
+            for (String symbol : alphabet) {
+                String[] next = {left.get(pair[0]).get(symbol), right.get(pair[1]).get(symbol)};
+                assertNotNull(message + ": no transition from " + pair[0] + " on " + symbol, next[0]);
+                assertNotNull(message + ": no transition from " + pair[1] + " on " + symbol, next[1]);
+                if (seen.add(Arrays.asList(next))) {
+                    queue.add(next);
+                }
+            }
+        }
+    }
+    
+    private static DFAMinimizer minimize(String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        DFAMinimizer minimizer = new DFAMinimizer();
+        minimizer.minimize(converter, parser.getAlphabet());
+        assertEquivalent(definition, converter, minimizer, parser.getAlphabet());
+        assertEquals(converter.getDFAStates().size(), minimizer.getOriginalStateCount());
+        return minimizer;
+    }
+    
+    @Test
+    public void knownLanguagesReachTheirMinimalSize() {
+        // (a|b)*abb: the four states of the textbook DFA, none of them dead
+        assertEquals(4, minimize("Regex: (a|b)*abb\n").getMinimizedStateCount());
+        // ab over {a, b}: start, after a, after ab and the dead state
+        assertEquals(4, minimize("Alphabet: a,b\nRegex: ab\n").getMinimizedStateCount());
+        // a(aa)* and (aa)*a both describe odd runs of a
+        assertEquals(2, minimize("Regex: a(aa)*|(aa)*a\n").getMinimizedStateCount());
+        
+        // Three accepting states that all loop on a collapse into one
+        DFAMinimizer loop = minimize("States: q0,q1,q2\nAlphabet: a\nTransition: q0,a,q1\nTransition: q1,a,q2\n"
+            + "Transition: q2,a,q1\nStart: q0\nFinal: q0,q1,q2\n");
+        assertEquals(3, loop.getOriginalStateCount());
+        assertEquals(1, loop.getMinimizedStateCount());
+        assertEquals(loop.getDFAStates(), loop.getDFAFinalStates());
+    }
+    
+    @Test
+    public void alreadyMinimalDFAsKeepEveryState() {
+        for (int n = 1; n <= 8; n++) {
+            DFAMinimizer minimizer = minimize(NFAGenerator.nthFromEnd(n));
+            assertEquals("nth " + n, 1 << n, minimizer.getOriginalStateCount());
+            assertEquals("nth " + n, 1 << n, minimizer.getMinimizedStateCount());
+        }
+    }
+    
+    @Test
+    public void randomDFAsKeepTheirLanguageAndNoTwoStatesAreEquivalent() {
+        for (long seed = 0; seed < 200; seed++) {
+            DFAMinimizer minimizer = minimize(NFAGenerator.random(2 + (int) (seed % 12), 2, 2.0, 0.1, seed));
+            assertTrue(minimizer.getMinimizedStateCount() <= minimizer.getOriginalStateCount());
+            Set<String> alphabet = minimizer.getDFATransitions().values().iterator().next().keySet();
+            List<String> states = new ArrayList<>(minimizer.getDFAStates());
+            for (int i = 0; i < states.size(); i++) {
+                for (int j = i + 1; j < states.size(); j++) {
+                    try {
+                        assertEquivalent("", minimizer.getDFATransitions(), states.get(i), minimizer.getDFAFinalStates(),
+                            minimizer.getDFATransitions(), states.get(j), minimizer.getDFAFinalStates(), alphabet);
+                    } catch (AssertionError distinguished) {
+                        continue;
+                    }
+                    fail("seed " + seed + ": " + states.get(i) + " and " + states.get(j) + " are equivalent");
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void callerAlphabetIsCopied() {
+        NFAParser parser = new NFAParser();
+        parser.parse("Regex: (a|b)*abb\n");
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        Set<String> alphabet = new HashSet<>(parser.getAlphabet());
+        DFAMinimizer minimizer = new DFAMinimizer();
+        minimizer.minimize(converter, alphabet);
+        String output = minimizer.generateDFAOutput();
+        alphabet.add("z");
+        assertEquals(output, minimizer.generateDFAOutput());
+    }
+    
+    @Test
+    public void minimizedDFAMatchesLikeTheOriginal() {
+        NFAParser parser = new NFAParser();
+        parser.parse("Regex: (ab|ba)*(a|bb)?\n");
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        DFAMinimizer minimizer = new DFAMinimizer();
+        minimizer.minimize(converter, parser.getAlphabet());
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int length = random.nextInt(12); length > 0; length--) {
+                input.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            assertEquals(input.toString(),
+                accepts(converter.getDFATransitions(), converter.getDFAStartState(), converter.getDFAFinalStates(), input),
+                accepts(minimizer.getDFATransitions(), minimizer.getDFAStartState(), minimizer.getDFAFinalStates(), input));
+        }
+    }
+}
\ No newline at end of file
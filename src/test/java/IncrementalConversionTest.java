@@ -0,0 +1,183 @@
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+import org.junit.Test;
+
+/**
+ * Randomized differential test of incremental re-conversion. Each trial
+ * builds a random NFA, converts it with an incremental converter, then
+ * applies a run of random edits: adding, removing and retargeting
+ * transitions (with and without epsilon), adding and removing states,
+ * growing and shrinking the alphabet and adding final states, and now and
+ * then turns incremental conversion off and on again. After every edit the
+ * incremental result must equal a full conversion from scratch.
+ */
+public class IncrementalConversionTest {
+    private static final int TRIALS = 3000;
+    private static final int EDITS_PER_TRIAL = 25;
+    // States beyond the initial ones that edits may add and remove again
+    private static final int SPARE_STATES = 3;
+    
+    /** The NFA being edited; epsilon edges have symbol -1. */
+    private static final class Model {
+        final int states;
+        final List<String> symbols = new ArrayList<>(Arrays.asList("a", "b"));
+        final List<int[]> edges = new ArrayList<>();
+        final Set<Integer> finals = new TreeSet<>();
+        final boolean[] present;
+        
+        Model(int states) {
+            this.states = states;
+            this.present = new boolean[states + SPARE_STATES];
+            Arrays.fill(present, 0, states, true);
+        }
+        
+        String definition() {
+            StringBuilder out = new StringBuilder("States: ");
+            boolean first = true;
+            for (int state = 0; state < present.length; state++) {
+                if (!present[state]) continue;
+                out.append(first ? "" : ",").append('q').append(state);
+                first = false;
+            }
+            out.append("\nAlphabet: ").append(String.join(",", symbols)).append('\n');
+            for (int[] edge : edges) {
+                if (!present[edge[0]] || !present[edge[2]]) continue;
+                String symbol = edge[1] < 0 ? "e" : symbols.get(Math.min(edge[1], symbols.size() - 1));
+                out.append("Transition: q").append(edge[0]).append(',').append(symbol).append(",q").append(edge[2]).append('\n');
+            }
+            out.append("Start: q0\nFinal: ");
+            first = true;
+            for (int state : finals) {
+                if (!present[state]) continue;
+                out.append(first ? "" : ",").append('q').append(state);
+                first = false;
+            }
+            if (first) out.append("q0");
+            return out.append('\n').toString();
+        }
+        
+        void edit(Random random) {
+            switch (random.nextInt(8)) {
+                case 0:
+                    edges.add(new int[] {random.nextInt(states), random.nextInt(2), random.nextInt(states)});
+                    break;
+                case 1:
+                    if (!edges.isEmpty()) edges.remove(random.nextInt(edges.size()));
+                    break;
+                case 2:
+                    edges.add(new int[] {random.nextInt(states), -1, random.nextInt(states)});
+                    break;
+                case 3: {
+                    int added = states + random.nextInt(SPARE_STATES);
+                    present[added] = true;
+                    edges.add(new int[] {random.nextInt(states), random.nextInt(2), added});
+                    edges.add(new int[] {added, random.nextInt(3) - 1, random.nextInt(present.length)});
+                    break;
+                }
+                case 4:
+                    present[1 + random.nextInt(present.length - 1)] = false;
+                    break;
+                case 5:
+                    if (symbols.size() == 2) {
+                        symbols.add("c");
+                    } else {
+                        symbols.remove(2);
+                    }
+                    edges.add(new int[] {random.nextInt(states), 2, random.nextInt(states)});
+                    break;
+                case 6:
+                    finals.add(random.nextInt(states));
+                    break;
+                default:
+                    if (!edges.isEmpty()) edges.get(random.nextInt(edges.size()))[2] = random.nextInt(states);
+                    break;
+            }
+        }
+    }
+    
+    @Test
+    public void incrementalMatchesFullConversionAfterEveryEdit() {
+        Random random = new Random(1);
+        long reused = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            // Mostly small NFAs, where edits touch a large share of the DFA, then some larger ones
+            int states = 2 + random.nextInt(trial < TRIALS * 5 / 6 ? 10 : 60);
+            Model model = new Model(states);
+            int edges = random.nextInt(3 * states);
+            for (int i = 0; i < edges; i++) {
+                model.edges.add(new int[] {random.nextInt(states), random.nextInt(5) == 0 ? -1 : random.nextInt(2),
+                    random.nextInt(states)});
+            }
+            model.finals.add(random.nextInt(states));
+            
+            NFAToDFAConverter incremental = new NFAToDFAConverter();
+            incremental.setIncremental(true);
+            if (random.nextBoolean()) incremental.setParallelism(3);
+            NFAParser parser = new NFAParser();
+            parser.parse(model.definition());
+            incremental.convert(parser);
+            
+            for (int step = 0; step < EDITS_PER_TRIAL; step++) {
+                model.edit(random);
+                if (random.nextInt(10) == 0) {
+                    incremental.setIncremental(false);
+                    incremental.setIncremental(true);
+                }
+                String definition = model.definition();
+                parser.parse(definition);
+                incremental.convert(parser);
+                
+                NFAParser fresh = new NFAParser();
+                fresh.parse(definition);
+                NFAToDFAConverter full = new NFAToDFAConverter();
+                full.convert(fresh);
+                ConverterEngineTest.assertSameDFA("trial " + trial + " edit " + step + "\n" + definition, full, incremental);
+                reused += incremental.getReusedStates();
+            }
+        }
+        // Guards against the test passing only because every edit fell back to a full conversion
+        assertTrue("no DFA states were reused", reused > 0);
+    }
+    
+    @Test
+    public void turningIncrementalOffForgetsThePreviousRun() {
+        NFAParser parser = new NFAParser();
+        parser.parse(NFAGenerator.random(30, 2, 1.5, 0.1, 7));
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.setIncremental(true);
+        converter.convert(parser);
+        converter.setIncremental(false);
+        parser.parse(NFAGenerator.random(30, 2, 1.5, 0.1, 8));
+        converter.convert(parser);
+        
+        NFAToDFAConverter full = new NFAToDFAConverter();
+        full.convert(parser);
+        ConverterEngineTest.assertSameDFA("after turning incremental off", full, converter);
+        assertTrue(converter.getReusedStates() == 0);
+    }
+    
+    @Test
+    public void turningIncrementalOffAndOnAgainConvertsFromScratch() {
+        NFAParser parser = new NFAParser();
+        parser.parse(NFAGenerator.random(30, 2, 1.5, 0.1, 7));
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.setIncremental(true);
+        converter.convert(parser);
+        converter.setIncremental(false);
+        converter.setIncremental(true);
+        parser.parse(NFAGenerator.random(30, 2, 1.5, 0.1, 8));
+        converter.convert(parser);
+        
+        NFAToDFAConverter full = new NFAToDFAConverter();
+        full.convert(parser);
+        ConverterEngineTest.assertSameDFA("after turning incremental off and on", full, converter);
+        assertTrue(converter.getReusedStates() == 0);
+        
+        // The run after the toggle is kept, so the next edit is incremental again
+        parser.parse(NFAGenerator.random(30, 2, 1.5, 0.1, 8).replace("Final: ", "Final: q1,"));
+        converter.convert(parser);
+        full.convert(parser);
+        ConverterEngineTest.assertSameDFA("edit after the toggle", full, converter);
+    }
+}
\ No newline at end of file
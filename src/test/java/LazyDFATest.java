@@ -0,0 +1,112 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.Test;
+
+/**
+ * The lazy matcher under cache budgets small enough to force its slow paths:
+ * flushing the state cache when it fills, and falling back to NFA simulation
+ * after consecutive flushes that came too close together. Every answer must
+ * agree with the compiled DFA and with a walk of the converter's DFA.
+ */
+public class LazyDFATest {
+    
+    private static final class Reference {
+        final NFAParser parser = new NFAParser();
+        final NFAToDFAConverter converter = new NFAToDFAConverter();
+        final CompiledDFA compiled;
+        
+        Reference(String definition) {
+            parser.parse(definition);
+            converter.convert(parser);
+            compiled = CompiledDFA.compile(converter, parser.getAlphabet());
+        }
+        
+        void assertAgrees(LazyDFA lazy, String input) {
+            boolean expected = DFAMinimizerTest.accepts(converter.getDFATransitions(), converter.getDFAStartState(),
+                converter.getDFAFinalStates(), input);
+            assertEquals(input, expected, compiled.matches(input));
+            assertEquals(input, expected, lazy.matches(input));
+            assertEquals(input, expected, lazy.matches(Arrays.asList(input.split("", -1)).subList(0, input.length())));
+        }
+    }
+    
+    private static String randomInput(Random random, int length, String symbols) {
+        StringBuilder input = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            input.append(symbols.charAt(random.nextInt(symbols.length())));
+        }
+        return input.toString();
+    }
+    
+    /** Budget for roughly {@code states} cached states, from the size of the one state a new matcher holds. */
+    private static long budgetFor(NFAParser parser, int states) {
+        return states * new LazyDFA(parser).getCacheBytes();
+    }
+    
+    @Test
+    public void thrashingCacheFallsBackToSimulation() {
+        // The nth-from-end DFA has 2^10 states, so a two-state cache misses on almost every symbol
+        Reference reference = new Reference(NFAGenerator.nthFromEnd(10));
+        LazyDFA lazy = new LazyDFA(reference.parser, 1);
+        Random random = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            reference.assertAgrees(lazy, randomInput(random, random.nextInt(200), "ab"));
+        }
+        assertTrue(lazy.getFlushes() > 0);
+        assertTrue(lazy.getEvictions() > 0);
+        assertTrue(lazy.getFallbacks() > 0);
+    }
+    
+    @Test
+    public void spacedOutFlushesKeepTheLazyDFA() {
+        // Long runs of b stay in one state, so each flush comes many symbols after the last
+        Reference reference = new Reference(NFAGenerator.nthFromEnd(4));
+        LazyDFA lazy = new LazyDFA(reference.parser, budgetFor(reference.parser, 8));
+        Random random = new Random(6);
+        StringBuilder input = new StringBuilder();
+        for (int run = 0; run < 50; run++) {
+            for (int i = 0; i < 200; i++) {
+                input.append('b');
+            }
+            input.append(randomInput(random, 3, "ab"));
+        }
+        reference.assertAgrees(lazy, input.toString());
+        assertTrue(lazy.getFlushes() > 3);
+        assertEquals(0, lazy.getFallbacks());
+        
+        // The cache survives between inputs, so matching one again is all hits
+        lazy.matches("abab");
+        lazy.resetStatistics();
+        assertTrue(lazy.matches("abab"));
+        assertEquals(0, lazy.getCacheMisses());
+        assertEquals(4, lazy.getCacheHits());
+    }
+    
+    @Test
+    public void largeCacheNeverFlushes() {
+        Reference reference = new Reference(NFAGenerator.random(40, 3, 2.0, 0.1, 9));
+        LazyDFA lazy = new LazyDFA(reference.parser);
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            reference.assertAgrees(lazy, randomInput(random, random.nextInt(50), "abcz"));
+        }
+        assertEquals(0, lazy.getFlushes());
+        assertEquals(0, lazy.getFallbacks());
+        assertTrue(lazy.getCacheHits() > 0);
+    }
+    
+    @Test
+    public void inputsLongerThanAnyBeforeAreMatchedInFull() {
+        Reference reference = new Reference(NFAGenerator.nthFromEnd(3));
+        LazyDFA lazy = new LazyDFA(reference.parser);
+        StringBuilder input = new StringBuilder();
+        for (int length = 0; length < 5000; length += 97) {
+            while (input.length() < length) {
+                input.append(input.length() % 7 == 0 ? 'a' : 'b');
+            }
+            reference.assertAgrees(lazy, input + "abb");
+            reference.assertAgrees(lazy, input + "bbb");
+        }
+    }
+}
\ No newline at end of file
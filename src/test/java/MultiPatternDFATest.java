@@ -0,0 +1,107 @@
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.junit.Test;
+
+/**
+ * The union DFA of {@link MultiPatternDFA} against one {@link CompiledDFA}
+ * per pattern, converted on its own: for every input the set of accepting
+ * pattern ids, and over all inputs the match count of each pattern, must
+ * agree. Patterns have different alphabets, so every input holds characters
+ * that some patterns do not know.
+ */
+public class MultiPatternDFATest {
+    
+    private static NFAParser parse(String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        return parser;
+    }
+    
+    private static List<NFAParser> patterns() {
+        List<NFAParser> patterns = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            patterns.add(parse("Regex: " + NFAGenerator.wordsRegex(1 + i % 3, 4, i) + "\n"));
+        }
+        for (long seed = 0; seed < 8; seed++) {
+            patterns.add(parse(NFAGenerator.random(6 + (int) seed, 3, 2.0, 0.2, seed)));
+        }
+        patterns.add(parse("Regex: [0-9]+(a|b)?\n"));
+        patterns.add(parse("Regex: ε\n"));
+        patterns.add(parse("Regex: (ab|ba)*\n"));
+        // The same language twice must report both ids
+        patterns.add(parse("Regex: (ab|ba)*\n"));
+        return patterns;
+    }
+    
+    @Test
+    public void unionMatchesEachPatternConvertedOnItsOwn() {
+        List<NFAParser> parsers = patterns();
+        List<NFASnapshot> snapshots = new ArrayList<>();
+        List<CompiledDFA> separate = new ArrayList<>();
+        for (NFAParser parser : parsers) {
+            snapshots.add(NFASnapshot.of(parser));
+            NFAToDFAConverter converter = new NFAToDFAConverter();
+            converter.convert(parser);
+            separate.add(CompiledDFA.compile(converter, converter.getAlphabet()));
+        }
+        MultiPatternDFA union = MultiPatternDFA.build(snapshots);
+        assertEquals(parsers.size(), union.patternCount());
+        
+        Random random = new Random(21);
+        List<String> inputs = new ArrayList<>();
+        long[] expectedCounts = new long[parsers.size()];
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int length = random.nextInt(10); length > 0; length--) {
+                input.append("abcdfg019z".charAt(random.nextInt(10)));
+            }
+            String text = input.toString();
+            BitSet expected = new BitSet();
+            for (int pattern = 0; pattern < separate.size(); pattern++) {
+                if (separate.get(pattern).matches(text)) {
+                    expected.set(pattern);
+                    expectedCounts[pattern]++;
+                }
+            }
+            assertEquals(text, expected, union.matches(text));
+            assertEquals(text, expected, union.matches(text.getBytes(StandardCharsets.ISO_8859_1), 0, text.length()));
+            assertEquals(text, !expected.isEmpty(), union.matchesAny(text));
+            inputs.add(text);
+        }
+        assertArrayEquals(expectedCounts, union.countMatches(inputs));
+        for (int pattern = 0; pattern < separate.size(); pattern++) {
+            assertEquals("pattern " + pattern, expectedCounts[pattern], separate.get(pattern).countMatches(inputs));
+        }
+        for (int pattern = parsers.size() - 4; pattern < parsers.size(); pattern++) {
+            assertTrue("pattern " + pattern + " never matched", expectedCounts[pattern] > 0);
+        }
+        assertEquals(expectedCounts[parsers.size() - 1], expectedCounts[parsers.size() - 2]);
+    }
+    
+    @Test
+    public void matchedSetsAreCopies() {
+        MultiPatternDFA union = MultiPatternDFA.build(Arrays.asList(
+            NFASnapshot.of(parse("Regex: a*\n")), NFASnapshot.of(parse("Regex: b\n"))));
+        BitSet matched = union.matches("aa");
+        assertEquals(BitSet.valueOf(new long[] {1}), matched);
+        matched.set(1);
+        assertEquals(BitSet.valueOf(new long[] {1}), union.matches("aa"));
+        assertEquals(BitSet.valueOf(new long[] {2}), union.matches("b"));
+        assertTrue(union.matches("ab").isEmpty());
+        assertTrue(union.matches("aĀ").isEmpty());
+        assertFalse(union.matchesAny("c"));
+    }
+    
+    @Test
+    public void multiCharacterSymbolsAreRejected() {
+        NFASnapshot multi = NFASnapshot.of(parse("States: q0,q1\nAlphabet: ab\nTransition: q0,ab,q1\nStart: q0\nFinal: q1\n"));
+        try {
+            MultiPatternDFA.build(Arrays.asList(NFASnapshot.of(parse("Regex: a\n")), multi));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Multi-pattern matcher needs single-character symbols, got: ab", e.getMessage());
+        }
+    }
+}
\ No newline at end of file
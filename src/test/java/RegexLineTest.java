@@ -0,0 +1,116 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.Test;
+
+/**
+ * {@code Regex:} lines in NFA definitions. A pattern defines the whole NFA,
+ * so a definition mixing it with explicit states, transitions or a second
+ * pattern is rejected rather than merged.
+ */
+public class RegexLineTest {
+    
+    private static NFAToDFAConverter convert(String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        return converter;
+    }
+    
+    private static void assertRejected(String definition, String message) {
+        try {
+            new NFAParser().parse(definition);
+            fail("Expected rejection of:\n" + definition);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+    
+    @Test
+    public void regexLineDefinesTheWholeNFA() {
+        NFAParser parser = new NFAParser();
+        parser.parse("Regex: (a|b)*abb\n");
+        assertEquals(new HashSet<>(Arrays.asList("q0", "q1", "q2", "q3", "q4", "q5")), parser.getStates());
+        assertEquals("q0", parser.getStartState());
+        
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        CompiledDFA dfa = CompiledDFA.compile(converter, converter.getAlphabet());
+        assertTrue(dfa.matches("abb"));
+        assertTrue(dfa.matches("babaabb"));
+        assertFalse(dfa.matches("abba"));
+        assertFalse(dfa.matches(""));
+    }
+    
+    @Test
+    public void regexLineMatchesTheCompiledPattern() {
+        NFAParser compiled = new NFAParser();
+        RegexCompiler.compile("(ab|ba)*[0-2]?", compiled);
+        NFAToDFAConverter expected = new NFAToDFAConverter();
+        expected.convert(compiled);
+        ConverterEngineTest.assertSameDFA("Regex line", expected, convert("\n  Regex: (ab|ba)*[0-2]?  \n"));
+    }
+    
+    @Test
+    public void alphabetLineMayAddSymbols() {
+        NFAToDFAConverter converter = convert("Alphabet: a,b,c\nRegex: ab\n");
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), converter.getAlphabet());
+        CompiledDFA dfa = CompiledDFA.compile(converter, converter.getAlphabet());
+        assertTrue(dfa.matches("ab"));
+        assertFalse(dfa.matches("abc"));
+    }
+    
+    @Test
+    public void explicitStatesBeforeRegexAreRejected() {
+        assertRejected("States: q0,q1\nTransition: q0,a,q1\nStart: q0\nFinal: q1\nRegex: b*\n",
+            "Regex line cannot be combined with states or transitions at line 5");
+        assertRejected("Start: q9\nRegex: b*\n", "Regex line cannot be combined with states or transitions at line 2");
+    }
+    
+    @Test
+    public void explicitStatesAfterRegexAreRejected() {
+        assertRejected("Regex: a*\nStates: q0,q1\n",
+            "Regex line cannot be combined with states or transitions at line 2 (Regex at line 1)");
+        assertRejected("Regex: a*\nAlphabet: a\nTransition: q1,a,q0\n",
+            "Regex line cannot be combined with states or transitions at line 3 (Regex at line 1)");
+        assertRejected("Regex: a*\nStart: q1\n",
+            "Regex line cannot be combined with states or transitions at line 2 (Regex at line 1)");
+        assertRejected("Regex: a*\nFinal: q0\n",
+            "Regex line cannot be combined with states or transitions at line 2 (Regex at line 1)");
+    }
+    
+    @Test
+    public void secondRegexLineIsRejected() {
+        assertRejected("Regex: a\n\nRegex: b\n", "Only one Regex line is allowed, found another at line 3 after line 1");
+    }
+    
+    @Test
+    public void parserCanBeReusedAfterARegexDefinition() {
+        NFAParser parser = new NFAParser();
+        parser.parse("Regex: ab\n");
+        parser.parse("States: q0,q1\nAlphabet: a\nTransition: q0,a,q1\nStart: q0\nFinal: q1\n");
+        assertEquals(new HashSet<>(Arrays.asList("q0", "q1")), parser.getStates());
+        parser.parse("Regex: b\n");
+        assertEquals(Collections.singleton("b"), parser.getAlphabet());
+    }
+    
+    @Test
+    public void escapedEpsilonIsRejected() {
+        for (String pattern : new String[] {"a\\ε", "[aε]", "[δ-ζ]b"}) {
+            try {
+                new NFAParser().parse("Regex: " + pattern + "\n");
+                fail(pattern);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("ε cannot be a symbol, even escaped or in a class"));
+                assertTrue(e.getMessage(), e.getMessage().endsWith(pattern));
+            }
+        }
+        // Unescaped, ε is still the empty string
+        NFAToDFAConverter converter = convert("Regex: aε|ε\n");
+        CompiledDFA dfa = CompiledDFA.compile(converter, converter.getAlphabet());
+        assertTrue(dfa.matches("a"));
+        assertTrue(dfa.matches(""));
+        assertFalse(converter.getAlphabet().contains("ε"));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.Test;
+
+/**
+ * {@link NFASnapshot} and {@link DFASnapshot}: the pure conversion must give
+ * the same DFA as {@link NFAToDFAConverter}, and neither snapshot may change
+ * when the parser it came from is refilled or when callers modify what the
+ * accessors hand out.
+ */
+public class SnapshotTest {
+    
+    private static NFAParser parse(String definition) {
+        NFAParser parser = new NFAParser();
+        parser.parse(definition);
+        return parser;
+    }
+    
+    private static void assertSameAsConverter(String message, NFAParser parser) {
+        NFAToDFAConverter converter = new NFAToDFAConverter();
+        converter.convert(parser);
+        DFASnapshot dfa = DFASnapshot.convert(NFASnapshot.of(parser));
+        
+        Set<String> states = new HashSet<>(dfa.getStateNames());
+        Set<String> finals = new HashSet<>();
+        Map<String, Map<String, String>> transitions = new HashMap<>();
+        for (int state = 0; state < dfa.stateCount(); state++) {
+            if (dfa.isAccepting(state)) finals.add(dfa.stateName(state));
+            Map<String, String> row = new HashMap<>();
+            for (int symbol = 0; symbol < dfa.symbolCount(); symbol++) {
+                int target = dfa.transition(state, symbol);
+                row.put(dfa.symbol(symbol), target == DFASnapshot.DEAD ? NFAToDFAConverter.DEAD_STATE : dfa.stateName(target));
+            }
+            if (!row.isEmpty()) transitions.put(dfa.stateName(state), row);
+        }
+        if (dfa.hasDeadState()) {
+            states.add(NFAToDFAConverter.DEAD_STATE);
+            Map<String, String> row = new HashMap<>();
+            for (String symbol : dfa.getAlphabet()) row.put(symbol, NFAToDFAConverter.DEAD_STATE);
+            transitions.put(NFAToDFAConverter.DEAD_STATE, row);
+        }
+        assertEquals(message + ": states", converter.getDFAStates(), states);
+        assertEquals(message + ": start state", converter.getDFAStartState(), dfa.stateName(dfa.startState()));
+        assertEquals(message + ": final states", converter.getDFAFinalStates(), finals);
+        assertEquals(message + ": transitions", converter.getDFATransitions(), transitions);
+        assertEquals(message + ": alphabet", converter.getAlphabet(), new HashSet<>(dfa.getAlphabet()));
+        
+        // Same text apart from the order of the unsorted state lists on the first and last lines
+        String expected = converter.generateDFAOutput();
+        String actual = dfa.generateDFAOutput();
+        assertEquals(message, expected.substring(expected.indexOf('\n'), expected.lastIndexOf('\n')),
+            actual.substring(actual.indexOf('\n'), actual.lastIndexOf('\n')));
+    }
+    
+    @Test
+    public void pureConversionMatchesTheConverter() {
+        for (long seed = 0; seed < 40; seed++) {
+            assertSameAsConverter("random " + seed, parse(NFAGenerator.random(2 + (int) seed, 3, 2.0, 0.1, seed)));
+            assertSameAsConverter("ranges " + seed, parse(NFAGenerator.ranges(5 + (int) seed % 10, 1.5, 0.1, seed)));
+        }
+        for (int n = 1; n <= 8; n++) {
+            assertSameAsConverter("nth " + n, parse(NFAGenerator.nthFromEnd(n)));
+        }
+        assertSameAsConverter("regex", parse("Regex: (a|b)*abb\n"));
+        assertSameAsConverter("no symbols", parse("States: q0,q1\nTransition: q0,e,q1\nStart: q0\nFinal: q1\n"));
+    }
+    
+    @Test
+    public void startStateIsRequired() {
+        NFASnapshot snapshot = NFASnapshot.of(parse("States: q0\nAlphabet: a\nFinal: q0\n"));
+        assertEquals(-1, snapshot.startState());
+        try {
+            DFASnapshot.convert(snapshot);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Start state is not defined", e.getMessage());
+        }
+    }
+    
+    @Test
+    public void snapshotsDoNotChangeWithTheParserOrTheirCallers() {
+        NFAParser parser = parse("States: q1,q0,q2\nAlphabet: b,a\nTransition: q0,a,q1\nTransition: q0,a,q2\n"
+            + "Transition: q1,e,q0\nStart: q0\nFinal: q2\n");
+        NFASnapshot nfa = NFASnapshot.of(parser);
+        DFASnapshot dfa = DFASnapshot.convert(nfa);
+        String output = dfa.generateDFAOutput();
+        
+        parser.parse(NFAGenerator.nthFromEnd(5));
+        assertEquals(Arrays.asList("q0", "q1", "q2"), nfa.getStates());
+        assertEquals(Arrays.asList("a", "b"), nfa.getAlphabet());
+        assertEquals(0, nfa.startState());
+        assertTrue(nfa.isFinal(2));
+        assertFalse(nfa.isFinal(0));
+        
+        nfa.targets(0, 0)[0] = 2;
+        nfa.epsilonTargets(1)[0] = 2;
+        assertArrayEquals(new int[] {1, 2}, nfa.targets(0, 0));
+        assertArrayEquals(new int[] {0}, nfa.epsilonTargets(1));
+        dfa.nfaStates(0)[0] = 2;
+        assertArrayEquals(new int[] {0}, dfa.nfaStates(0));
+        
+        for (List<String> view : Arrays.asList(nfa.getStates(), nfa.getAlphabet(), dfa.getAlphabet(), dfa.getStateNames())) {
+            try {
+                view.set(0, "x");
+                fail();
+            } catch (UnsupportedOperationException expected) {
+                // Read-only
+            }
+        }
+        assertEquals(output, dfa.generateDFAOutput());
+        assertEquals(output, DFASnapshot.convert(nfa).generateDFAOutput());
+    }
+    
+    @Test
+    public void oneSnapshotConvertsOnManyThreadsAtOnce() throws Exception {
+        NFASnapshot nfa = NFASnapshot.of(parse(NFAGenerator.random(60, 3, 2.0, 0.1, 12)));
+        String expected = DFASnapshot.convert(nfa).generateDFAOutput();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(pool.submit(() -> DFASnapshot.convert(nfa).generateDFAOutput()));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
\ No newline at end of file